@@ -1,43 +1,358 @@
+import database.BookImporter;
+import database.CatalogPager;
+import database.CatalogSnapshot;
+import database.ChangeFeedTailer;
+import database.ChangeLog;
+import database.ConnectionPool;
+import database.GroupCommitter;
+import database.InMemoryLibraryStore;
+import database.JdbcBookSearchEngine;
+import database.JdbcCatalogBrowser;
+import database.JdbcLibraryStore;
+import database.JdbcMutationApplier;
+import database.MutationJournal;
+import database.ShardedLibraryStore;
 import entities.Admin;
 import entities.RegularUser;
 import entities.User;
 import entities.Book;
+import enums.MutationType;
 import enums.Role;
+import interfaces.CatalogBrowser;
+import interfaces.LibraryStore;
+import interfaces.LoanPersistence;
+import interfaces.SearchEngine;
+import metrics.Metrics;
+import server.LibraryServer;
+import services.CatalogIndex;
+import services.CompactCatalog;
+import services.EntityCache;
+import services.FuzzyIndex;
+import services.LinearSearchEngine;
+import services.LoanLedger;
+import services.LoanMonitor;
+import services.NGramSearchEngine;
+import services.PopularityTracker;
+import services.SearchService;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class LibraryApp {
-    static Map<String, Book> books = new HashMap<>();
-    static Map<String, User> users = new HashMap<>();
-    static Set<String> genres = new HashSet<>();
-    static Scanner scanner = new Scanner(System.in);
-    static Connection connection;
+    static Map<String, Book> books = new ConcurrentHashMap<>();
+    static Map<String, User> users = new ConcurrentHashMap<>();
+    static CatalogBrowser catalogIndex = new CatalogIndex(books);
+    static SearchService<Book> bookSearch = new SearchService<>(newBookSearchEngine(),
+            new FuzzyIndex<>(Book::getId, List.of(Book::getTitle, Book::getAuthor)));
+    static LibraryStore store;
+    // Only set for the MySQL store
+    static ConnectionPool pool;
+    static CatalogPager catalogPager;
+    static GroupCommitter groupCommitter;
+    static LoanPersistence loanPersistence = LoanPersistence.NONE;
+    static LoanLedger loanLedger = new LoanLedger();
+    static long loanPeriodMillis = envInt("LOAN_PERIOD_MINUTES", 14 * 24 * 60) * 60_000L;
+    static LoanMonitor loanMonitor = new LoanMonitor(envInt("LOAN_CHECK_INTERVAL_MS", 1000), LibraryApp::loanOverdue);
+    static final DateTimeFormatter DUE_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+    static PopularityTracker popularity = new PopularityTracker(envInt("POPULARITY_TOP_K", 10),
+            envInt("POPULARITY_SKETCH_WIDTH", 1 << 16));
+    // Set by CACHE_MODE=bounded: books and users are read through bounded caches, not preloaded
+    static boolean boundedCache;
+    // Set by JOURNAL_FILE: writes are acknowledged once journaled and applied to MySQL in the background
+    static MutationJournal journal;
+    // Held from checking that a new book's/user's id is free until it is in memory. The journal takes
+    // any record, so this is what keeps a second one with the same id from replacing the first.
+    static final Object newBookLock = new Object();
+    static final Object newUserLock = new Object();
+    // Set by CHANGE_FEED_POLL_MS: writes are logged to library_changes and other instances' are tailed
+    static ChangeLog changeLog;
+    static ChangeFeedTailer changeFeed;
+    // Newest change feed entry when the startup load finished; see applyRemoteChange
+    static volatile long loadedThrough;
+    static Path snapshotFile;
+    // Cleared by any failed load or write; an out-of-sync memory image must not be snapshotted
+    static volatile boolean inSyncWithDatabase = true;
 
     public static void main(String[] args) {
-        connectDatabase();
-        createTables();
-        loadBooksFromDB();
-        loadUsersFromDB();
-        loadBorrowedBooksFromDB();
+        openStore();
+        if ("compact".equalsIgnoreCase(System.getenv("CATALOG_STORAGE"))) {
+            useCompactCatalog();
+        }
+        initializeStore();
+        openJournal();
+        openChangeFeed();
+        loadData();
+        if (changeFeed != null) {
+            try {
+                loadedThrough = changeFeed.latestSequence();
+            } catch (SQLException e) {
+                // Treat every change as overlapping the load; that only costs row reads
+                loadedThrough = Long.MAX_VALUE;
+                System.err.println("Error reading change feed position: " + e.getMessage());
+            }
+            changeFeed.start();
+        }
+        loanMonitor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(LibraryApp::shutdown));
 
-        if (users.isEmpty()) {
+        // In bounded cache mode the map starts empty, so also ask for the admin row itself
+        if (users.isEmpty() && users.get("admin") == null) {
+            // Kept even if it can't be saved, or nobody could log in to fix things
             Admin defaultAdmin = new Admin("admin", "admin");
+            if (!saveUserToDB(defaultAdmin)) {
+                inSyncWithDatabase = false;
+            }
             users.put("admin", defaultAdmin);
-            saveUserToDB(defaultAdmin);
         }
 
+        int serverPort = envInt("SERVER_PORT", 0);
+        if (serverPort > 0) {
+            try (LibraryServer server = new LibraryServer(serverPort, LibraryApp::runSession)) {
+                System.out.println("Serving library sessions on port " + server.getPort() + ".");
+                server.serve();
+            } catch (IOException e) {
+                System.err.println("Library server failed: " + e.getMessage());
+                System.exit(1);
+            }
+        } else {
+            runSession(new Scanner(System.in), System.out);
+        }
+    }
+
+    static void loadData() {
+        if (boundedCache) {
+            // Books and users load on demand; only the compact loan ledger is filled up front
+            loadBorrowedBooksFromDB();
+            return;
+        }
+
+        snapshotFile = snapshotPath();
+        String marker = snapshotFile == null ? null : store.changeMarker();
+
+        if (marker != null && loadSnapshot(marker)) {
+            return;
+        }
+
+        // Books and users are independent; loans need both in memory first
+        CompletableFuture<Void> booksLoaded = CompletableFuture.runAsync(LibraryApp::loadBooksFromDB);
+        CompletableFuture<Void> usersLoaded = CompletableFuture.runAsync(LibraryApp::loadUsersFromDB);
+        CompletableFuture.allOf(booksLoaded, usersLoaded).join();
+        loadBorrowedBooksFromDB();
+
+        if (marker != null && inSyncWithDatabase) {
+            writeSnapshot(marker);
+        }
+    }
+
+    static void shutdown() {
+        loanMonitor.close();
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
+        if (journal != null) {
+            journal.close(envInt("JOURNAL_DRAIN_TIMEOUT_MS", 10000));
+        }
+        if (snapshotFile != null && inSyncWithDatabase) {
+            String marker = store.changeMarker();
+            if (marker != null) {
+                writeSnapshot(marker);
+            }
+        }
+        store.close();
+    }
+
+
+    static Path snapshotPath() {
+        String snapshotPath = System.getenv("SNAPSHOT_FILE");
+        return snapshotPath == null || snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+    }
+
+    // MySQL writes only move the write counter behind the snapshot tag when there is a snapshot to
+    // check it against; the bounded cache never uses one
+    static boolean countWrites() {
+        return snapshotPath() != null && !"bounded".equalsIgnoreCase(System.getenv("CACHE_MODE"));
+    }
+
+    static boolean loadSnapshot(String marker) {
+        CatalogSnapshot snapshot;
+        try {
+            snapshot = CatalogSnapshot.read(snapshotFile, marker);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable snapshot: " + e.getMessage());
+            return false;
+        }
+        if (snapshot == null) {
+            return false;
+        }
+
+        for (Book book : snapshot.books) {
+            addLoadedBook(book);
+        }
+        for (String[] user : snapshot.users) {
+            addLoadedUser(user[0], user[1], Role.valueOf(user[2]));
+        }
+        for (String[] loan : snapshot.loans) {
+            applyLoadedLoan(loan[0], loan[1], Long.parseLong(loan[2]));
+        }
+        System.out.println("Loaded " + books.size() + " books and " + users.size() + " users from snapshot.");
+        return true;
+    }
+
+    static void writeSnapshot(String marker) {
+        CatalogSnapshot snapshot = new CatalogSnapshot();
+        snapshot.books.addAll(books.values());
+        for (User user : users.values()) {
+            snapshot.users.add(new String[]{user.getId(), user.getName(), user.getRole().name()});
+            for (String bookId : user.getBorrowedBooks()) {
+                LoanMonitor.Loan loan = loanMonitor.find(user.getId(), bookId);
+                snapshot.loans.add(new String[]{user.getId(), bookId,
+                        Long.toString(loan == null ? 0 : loan.getDueAtMillis())});
+            }
+        }
+        try {
+            CatalogSnapshot.write(snapshotFile, marker, snapshot);
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot: " + e.getMessage());
+        }
+    }
+
+    // One login loop; the console runs it on stdin, server mode runs one per connected client
+    static void runSession(Scanner in, PrintStream out) {
         while (true) {
-            System.out.println("\nLogin (Enter User ID):");
-            String userId = scanner.nextLine();
+            out.println("\nLogin (Enter User ID):");
+            String userId = in.nextLine();
             User user = users.get(userId);
             if (user == null) {
-                System.out.println("Invalid user.");
+                out.println("Invalid user.");
                 continue;
             }
-            if (user.getRole() == Role.ADMIN) handleAdmin((Admin) user);
-            else handleRegularUser((RegularUser) user);
+            if (user.getRole() == Role.ADMIN) handleAdmin((Admin) user, in, out);
+            else handleRegularUser((RegularUser) user, in, out);
+        }
+    }
+
+    // LIBRARY_STORE=memory runs without a database server; the default is MySQL
+    static void openStore() {
+        if ("memory".equalsIgnoreCase(System.getenv("LIBRARY_STORE"))) {
+            String storePath = System.getenv("STORE_FILE");
+            useStore(newMemoryStore(storePath == null || storePath.isBlank() ? null : Path.of(storePath),
+                    envInt("STORE_FLUSH_INTERVAL_MS", 1000)));
+            if ("bounded".equalsIgnoreCase(System.getenv("CACHE_MODE"))) {
+                System.err.println("CACHE_MODE=bounded is ignored with the in-memory store.");
+            }
+            System.out.println("Using the in-memory store.");
+            return;
         }
+        String shardList = System.getenv("DB_SHARDS");
+        if (shardList != null && !shardList.isBlank()) {
+            connectShards(shardList);
+            return;
+        }
+        connectDatabase();
+    }
+
+    // For stores that need no connection setup (the embedded one, or one a tool built itself)
+    static void useStore(LibraryStore opened) {
+        store = opened;
+        loanPersistence = store;
+        catalogPager = new CatalogPager(store, envInt("CATALOG_PAGE_SIZE", 20));
+        registerMetrics();
+    }
+
+    // STORE_SHARDS > 1 splits it into that many embedded stores behind the sharding layer, each
+    // with its own file, so sharding can be tried without any database servers
+    static LibraryStore newMemoryStore(Path file, long flushIntervalMillis) {
+        int shardCount = envInt("STORE_SHARDS", 1);
+        if (shardCount <= 1) {
+            return new InMemoryLibraryStore(file, flushIntervalMillis);
+        }
+        List<String> names = new ArrayList<>();
+        List<LibraryStore> shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            names.add("shard-" + i);
+            shards.add(new InMemoryLibraryStore(file == null ? null : Path.of(file + ".shard-" + i),
+                    flushIntervalMillis));
+        }
+        return new ShardedLibraryStore(names, shards);
+    }
+
+    // DB_SHARDS lists the databases as host:port/name entries, all reached with DB_USER/DB_PASSWORD.
+    // Books and loans are spread over them by book id; the journal, change feed, group commit and
+    // bounded cache work against a single database, so asking for any of them stops the app here
+    // rather than have it run without them.
+    static void connectShards(String shardList) {
+        List<String> unsupported = new ArrayList<>();
+        if ("bounded".equalsIgnoreCase(System.getenv("CACHE_MODE"))) {
+            unsupported.add("CACHE_MODE=bounded");
+        }
+        if (envInt("CHANGE_FEED_POLL_MS", 0) > 0) {
+            unsupported.add("CHANGE_FEED_POLL_MS");
+        }
+        if (envInt("GROUP_COMMIT_MAX_BATCH", 0) > 0) {
+            unsupported.add("GROUP_COMMIT_MAX_BATCH");
+        }
+        String journalPath = System.getenv("JOURNAL_FILE");
+        if (journalPath != null && !journalPath.isBlank()) {
+            unsupported.add("JOURNAL_FILE");
+        }
+        if (!unsupported.isEmpty()) {
+            System.err.println("These need a single database and can't be used with DB_SHARDS: "
+                    + String.join(", ", unsupported));
+            System.exit(1);
+        }
+        List<String> names = new ArrayList<>();
+        List<LibraryStore> shards = new ArrayList<>();
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            for (String entry : shardList.split(",")) {
+                String name = entry.trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                ConnectionPool shardPool = new ConnectionPool("jdbc:mysql://" + name
+                        + "?useServerPrepStmts=true&useCursorFetch=true&rewriteBatchedStatements=true",
+                        System.getenv("DB_USER"), System.getenv("DB_PASSWORD"),
+                        envInt("DB_POOL_MIN_SIZE", 2),
+                        envInt("DB_POOL_MAX_SIZE", 10),
+                        envInt("DB_POOL_ACQUIRE_TIMEOUT_MS", 30000),
+                        envInt("DB_POOL_IDLE_TIMEOUT_MS", 600000),
+                        envInt("DB_POOL_LEAK_THRESHOLD_MS", 60000),
+                        "true".equalsIgnoreCase(System.getenv("DB_POOL_LEAK_TRACE")),
+                        envInt("DB_STATEMENT_CACHE_SIZE", 32));
+                shardPool.start();
+                String prefix = "shard." + names.size();
+                Metrics.gauge(prefix + ".pool.active", shardPool::getActiveCount);
+                Metrics.gauge(prefix + ".pool.idle", shardPool::getIdleCount);
+                names.add(name);
+                shards.add(new JdbcLibraryStore(shardPool, null, null, countWrites()));
+            }
+            store = new ShardedLibraryStore(names, shards);
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Database connection failed: " + e.getMessage());
+            System.exit(1);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("MySQL JDBC Driver not found", e);
+        }
+        loanPersistence = store;
+        catalogPager = new CatalogPager(store, envInt("CATALOG_PAGE_SIZE", 20));
+        registerMetrics();
+        System.out.println("Connected to " + names.size() + " database shards.");
     }
 
     static void connectDatabase() {
@@ -48,10 +363,38 @@ public class LibraryApp {
             String dbUser = System.getenv("DB_USER");
             String dbPassword = System.getenv("DB_PASSWORD");
 
-            String connectionUrl = String.format("jdbc:mysql://%s:%s/%s", dbHost, dbPort, dbName);
+            // Server-side prepared statements, so cached statements skip the parse on reuse
+            // Cursor fetch lets the startup loads stream rows instead of buffering whole tables
+            // and rewriteBatchedStatements turns bulk-import batches into multi-row INSERTs
+            String connectionUrl = String.format("jdbc:mysql://%s:%s/%s"
+                            + "?useServerPrepStmts=true&useCursorFetch=true&rewriteBatchedStatements=true",
+                    dbHost, dbPort, dbName);
 
             Class.forName("com.mysql.cj.jdbc.Driver");
-            connection = DriverManager.getConnection(connectionUrl, dbUser, dbPassword);
+            pool = new ConnectionPool(connectionUrl, dbUser, dbPassword,
+                    envInt("DB_POOL_MIN_SIZE", 2),
+                    envInt("DB_POOL_MAX_SIZE", 10),
+                    envInt("DB_POOL_ACQUIRE_TIMEOUT_MS", 30000),
+                    envInt("DB_POOL_IDLE_TIMEOUT_MS", 600000),
+                    envInt("DB_POOL_LEAK_THRESHOLD_MS", 60000),
+                    "true".equalsIgnoreCase(System.getenv("DB_POOL_LEAK_TRACE")),
+                    envInt("DB_STATEMENT_CACHE_SIZE", 32));
+            pool.start();
+            registerMetrics();
+            int groupCommitBatch = envInt("GROUP_COMMIT_MAX_BATCH", 0);
+            if (groupCommitBatch > 0) {
+                groupCommitter = new GroupCommitter(pool, groupCommitBatch, envInt("GROUP_COMMIT_MAX_WAIT_MS", 5),
+                        envInt("GROUP_COMMIT_TIMEOUT_MS", 30000));
+            }
+            if (envInt("CHANGE_FEED_POLL_MS", 0) > 0) {
+                changeLog = new ChangeLog(UUID.randomUUID().toString());
+            }
+            store = new JdbcLibraryStore(pool, groupCommitter, changeLog, countWrites());
+            loanPersistence = store;
+            catalogPager = new CatalogPager(store, envInt("CATALOG_PAGE_SIZE", 20));
+            if ("bounded".equalsIgnoreCase(System.getenv("CACHE_MODE"))) {
+                useBoundedCaches();
+            }
             System.out.println("Connected to database successfully.");
         } catch (SQLException e) {
             System.err.println("Database connection failed: " + e.getMessage());
@@ -61,423 +404,987 @@ public class LibraryApp {
         }
     }
 
-    static void createTables() {
+    // Replays what the last run left in the journal before anything is loaded, so the load sees it
+    static void openJournal() {
+        String journalPath = System.getenv("JOURNAL_FILE");
+        if (journalPath == null || journalPath.isBlank()) {
+            return;
+        }
+        if (pool == null || boundedCache) {
+            // The journal replays into MySQL; and evicted cache entries would reload from tables
+            // that may not have caught up with it
+            System.err.println("JOURNAL_FILE needs a single MySQL database and is ignored with CACHE_MODE=bounded.");
+            return;
+        }
+        MutationJournal opened = new MutationJournal(Path.of(journalPath), pool,
+                new JdbcMutationApplier(changeLog, countWrites()),
+                envInt("JOURNAL_APPLY_BATCH", 100), mutation -> inSyncWithDatabase = false);
+        try {
+            int replayed = opened.open();
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " journaled changes.");
+            }
+            if (opened.getPendingCount() > 0) {
+                // The tables are behind the journal; don't snapshot them as if they weren't
+                inSyncWithDatabase = false;
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening journal: " + e.getMessage());
+            System.exit(1);
+        }
+        journal = opened;
+        loanPersistence = new LoanPersistence() {
+            @Override
+            public boolean recordBorrow(String userId, String bookId, long dueAtMillis) {
+                return journal.record(MutationType.BORROW, userId, bookId, Long.toString(dueAtMillis));
+            }
+
+            @Override
+            public boolean recordRenewal(String userId, String bookId, long dueAtMillis) {
+                return journal.record(MutationType.RENEW, userId, bookId, Long.toString(dueAtMillis));
+            }
+
+            @Override
+            public boolean recordReturn(String userId, String bookId) {
+                return journal.record(MutationType.RETURN, userId, bookId);
+            }
+        };
+    }
+
+    // Marks the feed position before the load, so nothing another instance writes meanwhile is missed
+    static void openChangeFeed() {
+        if (changeLog == null) {
+            return;
+        }
+        ChangeFeedTailer tailer = new ChangeFeedTailer(pool, changeLog.getOrigin(), LibraryApp::applyRemoteChange,
+                envInt("CHANGE_FEED_POLL_MS", 0), envInt("CHANGE_FEED_GAP_TIMEOUT_MS", 10000),
+                envInt("CHANGE_FEED_RETENTION_MINUTES", 1440));
         try {
-            Statement stmt = connection.createStatement();
-            // Create books table if not exists
-            stmt.execute("CREATE TABLE IF NOT EXISTS books (" +
-                    "id VARCHAR(50) PRIMARY KEY, " +
-                    "title VARCHAR(100) NOT NULL, " +
-                    "author VARCHAR(100) NOT NULL, " +
-                    "genre VARCHAR(50) NOT NULL, " +
-                    "availableCopies INT NOT NULL)");
-
-            // Create users table if not exists
-            stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
-                    "id VARCHAR(50) PRIMARY KEY, " +
-                    "name VARCHAR(100) NOT NULL, " +
-                    "role ENUM('ADMIN', 'REGULAR') NOT NULL)");
-
-            // Create userbook table for tracking borrowed books
-            stmt.execute("CREATE TABLE IF NOT EXISTS userbook (" +
-                    "user_id VARCHAR(50) NOT NULL, " +
-                    "book_id VARCHAR(50) NOT NULL, " +
-                    "PRIMARY KEY (user_id, book_id), " +
-                    "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE, " +
-                    "FOREIGN KEY (book_id) REFERENCES books(id) ON DELETE CASCADE)");
+            tailer.markStart();
         } catch (SQLException e) {
-            System.err.println("Error creating tables: " + e.getMessage());
+            System.err.println("Error opening change feed: " + e.getMessage());
             System.exit(1);
         }
+        changeFeed = tailer;
+        Metrics.gauge("changeFeed.applied", tailer::getAppliedCount);
+        Metrics.gauge("changeFeed.skippedGaps", tailer::getSkippedGapCount);
+        Metrics.gauge("changeFeed.lagMillis", tailer::getLagMillis);
+    }
+
+    // Patches memory with a change another instance committed. Book and user rows are re-read;
+    // loans move the ledger and copy counts by one, and only if the ledger actually changed. Loans
+    // logged up to loadedThrough may have committed while the startup load ran: books are loaded
+    // before loans, so the load can have seen the loan and not the copy count or the other way
+    // round, and a delta could be off by one either way. For those the book row is re-read instead.
+    // The feed doesn't carry due dates; a borrow or renewal is due one loan period after it
+    // happened, i.e. (within the feed's lag) now.
+    static void applyRemoteChange(ChangeFeedTailer.Change change) {
+        boolean overlapsLoad = change.sequence <= loadedThrough;
+        switch (change.type) {
+            case SAVE_BOOK, UPDATE_BOOK, EDIT_BOOK -> refreshBook(change.entityId);
+            case DELETE_BOOK -> forgetBook(change.entityId);
+            case SAVE_USER -> {
+                if (boundedCache) {
+                    users.remove(change.entityId);
+                } else if (!users.containsKey(change.entityId)) {
+                    try {
+                        store.findUser(change.entityId, LibraryApp::addLoadedUser);
+                    } catch (SQLException e) {
+                        System.err.println("Error loading user: " + e.getMessage());
+                    }
+                }
+            }
+            // Logged even when the delete was refused, so check the row is really gone
+            case DELETE_USER -> {
+                try {
+                    if (boundedCache || !store.findUser(change.entityId, (id, name, role) -> { })) {
+                        users.remove(change.entityId);
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Error loading user: " + e.getMessage());
+                }
+            }
+            case BORROW -> {
+                if (loanLedger.add(change.entityId, change.relatedId)) {
+                    if (!overlapsLoad) {
+                        adjustCopies(change.relatedId, -1);
+                    }
+                    loanMonitor.track(change.entityId, change.relatedId, dueDateFrom(System.currentTimeMillis()));
+                }
+                if (overlapsLoad) {
+                    refreshBook(change.relatedId);
+                }
+            }
+            case RENEW -> {
+                if (loanLedger.contains(change.entityId, change.relatedId)) {
+                    loanMonitor.track(change.entityId, change.relatedId, dueDateFrom(System.currentTimeMillis()));
+                }
+            }
+            case RETURN -> {
+                if (loanLedger.remove(change.entityId, change.relatedId)) {
+                    if (!overlapsLoad) {
+                        adjustCopies(change.relatedId, 1);
+                    }
+                    loanMonitor.untrack(change.entityId, change.relatedId);
+                }
+                if (overlapsLoad) {
+                    refreshBook(change.relatedId);
+                }
+            }
+        }
     }
 
-    static void handleAdmin(Admin admin) {
+    static void refreshBook(String id) {
+        if (boundedCache) {
+            // Evicted; the next read loads the current row
+            books.remove(id);
+            return;
+        }
+        Book current;
+        try {
+            current = store.findBook(id);
+        } catch (SQLException e) {
+            System.err.println("Error loading book: " + e.getMessage());
+            return;
+        }
+        if (current == null) {
+            forgetBook(id);
+            return;
+        }
+        Book book = books.get(id);
+        if (book == null) {
+            addLoadedBook(current);
+            return;
+        }
+        synchronized (book.lock()) {
+            applyEdit(book, current, current.getVersion());
+            book.setAvailableCopies(current.getAvailableCopies());
+        }
+        catalogIndex.add(book);
+        bookSearch.update(book, id);
+    }
+
+    static void forgetBook(String id) {
+        books.remove(id);
+        catalogIndex.remove(id);
+        bookSearch.remove(id);
+        dropLoansOf(id);
+    }
+
+    static void dropLoansOf(String bookId) {
+        for (String userId : loanLedger.borrowersOf(bookId)) {
+            loanMonitor.untrack(userId, bookId);
+        }
+        loanLedger.removeBook(bookId);
+    }
+
+    static void adjustCopies(String bookId, int delta) {
+        if (boundedCache) {
+            books.remove(bookId);
+            return;
+        }
+        Book book = books.get(bookId);
+        if (book != null) {
+            if (delta < 0) {
+                book.decreaseCopies();
+            } else {
+                book.increaseCopies();
+            }
+            catalogIndex.refreshAvailability(book);
+        }
+    }
+
+    // Swaps the preloaded maps for read-through caches; search and browse then query the database
+    static void useBoundedCaches() {
+        long maxWeight = envInt("CACHE_MAX_WEIGHT_KB", 65536) * 1024L;
+        EntityCache<String, Book> bookCache = new EntityCache<>(maxWeight, LibraryApp::bookWeight, LibraryApp::loadBook);
+        EntityCache<String, User> userCache = new EntityCache<>(maxWeight, LibraryApp::userWeight, LibraryApp::loadUser);
+        books = bookCache;
+        users = userCache;
+        catalogIndex = new JdbcCatalogBrowser(pool);
+        bookSearch = new SearchService<>(new JdbcBookSearchEngine(pool, envInt("SEARCH_MAX_RESULTS", 1000)));
+        boundedCache = true;
+        registerCacheMetrics("cache.books", bookCache);
+        registerCacheMetrics("cache.users", userCache);
+    }
+
+    // Keeps the preloaded books in packed columns instead of one object graph per book. The catalog
+    // answers browse and search queries itself by scanning; the n-gram and fuzzy indexes would hold
+    // a copy of every title again, so there are no typo-tolerant suggestions in this mode.
+    static void useCompactCatalog() {
+        if (boundedCache) {
+            System.err.println("CATALOG_STORAGE=compact is ignored with CACHE_MODE=bounded.");
+            return;
+        }
+        CompactCatalog catalog = new CompactCatalog();
+        books = catalog;
+        catalogIndex = catalog;
+        bookSearch = new SearchService<>(catalog);
+        Metrics.gauge("catalog.compactBytes", catalog::sizeInBytes);
+    }
+
+    static void registerCacheMetrics(String prefix, EntityCache<?, ?> cache) {
+        Metrics.gauge(prefix + ".hits", cache::hitCount);
+        Metrics.gauge(prefix + ".misses", cache::missCount);
+        Metrics.gauge(prefix + ".hitRatePercent", () -> Math.round(cache.hitRate() * 100));
+        Metrics.gauge(prefix + ".loads", cache::loadCount);
+        Metrics.gauge(prefix + ".evictions", cache::evictionCount);
+        Metrics.gauge(prefix + ".weight", cache::weightedSize);
+    }
+
+    // Rough heap bytes: object headers and fields plus two bytes per character
+    static int bookWeight(Book book) {
+        return 120 + 2 * (book.getId().length() + book.getTitle().length()
+                + book.getAuthor().length() + book.getGenre().length());
+    }
+
+    static int userWeight(User user) {
+        return 80 + 2 * (user.getId().length() + user.getName().length());
+    }
+
+    static Book loadBook(String id) {
+        try {
+            return store.findBook(id);
+        } catch (SQLException e) {
+            System.err.println("Error loading book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static User loadUser(String id) {
+        User[] found = new User[1];
+        try {
+            store.findUser(id, (userId, name, role) -> found[0] = newUser(userId, name, role));
+        } catch (SQLException e) {
+            System.err.println("Error loading user: " + e.getMessage());
+        }
+        return found[0];
+    }
+
+    // SEARCH_ENGINE=linear scans the catalog per query; the default keeps an n-gram index
+    static SearchEngine<Book> newBookSearchEngine() {
+        List<Function<Book, String>> fields = List.of(Book::getTitle, Book::getAuthor, Book::getGenre);
+        if ("linear".equalsIgnoreCase(System.getenv("SEARCH_ENGINE"))) {
+            return new LinearSearchEngine<>(() -> books.values(), fields);
+        }
+        return new NGramSearchEngine<>(Book::getId, fields);
+    }
+
+    static void registerMetrics() {
+        if (pool != null) {
+            Metrics.gauge("pool.active", pool::getActiveCount);
+            Metrics.gauge("pool.idle", pool::getIdleCount);
+            Metrics.gauge("pool.total", pool::getTotalCount);
+            Metrics.gauge("statementCache.hits", pool::getStatementCacheHits);
+            Metrics.gauge("statementCache.misses", pool::getStatementCacheMisses);
+        }
+        Metrics.gauge("catalog.books", () -> books.size());
+        Metrics.gauge("catalog.users", () -> users.size());
+        Metrics.gauge("loans.open", () -> loanMonitor.getOpenCount());
+        Metrics.gauge("loans.overdue", () -> loanMonitor.getOverdueCount());
+        Metrics.registerMBean();
+
+        int dumpInterval = envInt("METRICS_DUMP_INTERVAL_SECONDS", 0);
+        if (dumpInterval > 0) {
+            Metrics.startPeriodicDump(dumpInterval, System.err);
+        }
+    }
+
+    static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    static void initializeStore() {
+        try {
+            store.initialize();
+        } catch (SQLException e) {
+            System.err.println("Error initializing store: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    static void handleAdmin(Admin admin, Scanner in, PrintStream out) {
         while (true) {
-            System.out.println("\n--- Admin Menu ---");
-            System.out.println("1. Add Book\n2. Edit Book\n3. Delete Book\n4. Register User\n5. View All Borrowed Books\n6. Logout");
-            String choice = scanner.nextLine();
+            out.println("\n--- Admin Menu ---");
+            out.println("1. Add Book\n2. Edit Book\n3. Delete Book\n4. Register User\n5. View All Borrowed Books\n6. Bulk Import Books\n7. View Borrowers of a Book\n8. View Popularity Stats\n9. View Overdue Loans\n10. Logout");
+            String choice = in.nextLine();
             switch (choice) {
-                case "1" -> addBook();
-                case "2" -> editBook();
-                case "3" -> deleteBook();
-                case "4" -> registerUser();
-                case "5" -> viewAllBorrowedBooks();
-                case "6" -> { return; }
-                default -> System.out.println("Invalid option.");
+                case "1" -> addBook(in, out);
+                case "2" -> editBook(in, out);
+                case "3" -> deleteBook(in, out);
+                case "4" -> registerUser(in, out);
+                case "5" -> viewAllBorrowedBooks(out);
+                case "6" -> importBooks(in, out);
+                case "7" -> viewBookBorrowers(in, out);
+                case "8" -> viewPopularity(out);
+                case "9" -> viewOverdueLoans(out);
+                case "10" -> { return; }
+                default -> out.println("Invalid option.");
             }
         }
     }
 
-    static void handleRegularUser(RegularUser user) {
+    static void handleRegularUser(RegularUser user, Scanner in, PrintStream out) {
         while (true) {
-            System.out.println("\n--- User Menu ---");
-            System.out.println("1. View Catalog\n2. Borrow Book\n3. Return Book\n4. View My Borrowed Books\n5. Logout");
-            String choice = scanner.nextLine();
+            out.println("\n--- User Menu ---");
+            out.println("1. View Catalog\n2. Borrow Book\n3. Return Book\n4. View My Borrowed Books\n5. Search Catalog\n6. Browse by Genre/Author\n7. Renew Book\n8. Logout");
+            String choice = in.nextLine();
             switch (choice) {
-                case "1" -> books.values().forEach(System.out::println);
+                case "1" -> viewCatalog(in, out);
                 case "2" -> {
-                    System.out.println("Enter Book ID:");
-                    String bookId = scanner.nextLine();
+                    out.println("Enter Book ID:");
+                    String bookId = in.nextLine();
                     if (borrowBook(user.getId(), bookId)) {
-                        System.out.println("Book borrowed successfully.");
+                        out.println("Book borrowed successfully.");
                     } else {
-                        System.out.println("Failed to borrow book. It may not be available.");
+                        out.println("Failed to borrow book. It may not be available.");
                     }
                 }
                 case "3" -> {
-                    System.out.println("Enter Book ID:");
-                    String bookId = scanner.nextLine();
+                    out.println("Enter Book ID:");
+                    String bookId = in.nextLine();
                     if (returnBook(user.getId(), bookId)) {
-                        System.out.println("Book returned successfully.");
+                        out.println("Book returned successfully.");
                     } else {
-                        System.out.println("Failed to return book. You may not have borrowed it.");
+                        out.println("Failed to return book. You may not have borrowed it.");
                     }
                 }
-                case "4" -> viewUserBorrowedBooks(user.getId());
-                case "5" -> { return; }
-                default -> System.out.println("Invalid option.");
+                case "4" -> viewUserBorrowedBooks(user.getId(), out);
+                case "5" -> searchCatalog(in, out);
+                case "6" -> browseCatalog(in, out);
+                case "7" -> {
+                    out.println("Enter Book ID:");
+                    String bookId = in.nextLine();
+                    if (renewBook(user.getId(), bookId)) {
+                        out.println("Book renewed. Now due " + formatDueDate(user.getId(), bookId) + ".");
+                    } else {
+                        out.println("Failed to renew book. You may not have borrowed it.");
+                    }
+                }
+                case "8" -> { return; }
+                default -> out.println("Invalid option.");
             }
         }
     }
 
-    static boolean borrowBook(String userId, String bookId) {
+    static void viewCatalog(Scanner in, PrintStream out) {
+        // Not closed: closing it would close the session's output stream
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        String cursor = "";
+        int page = 1;
         try {
-            // Check if book exists and has available copies
-            Book book = books.get(bookId);
-            if (book == null || book.getAvailableCopies() <= 0) {
-                return false;
+            while (true) {
+                out.println("\n--- Catalog (page " + page + ") ---");
+                cursor = catalogPager.writePage(cursor, writer);
+                if (cursor == null) {
+                    out.println("--- End of catalog ---");
+                    return;
+                }
+                out.println("Enter n for the next page, anything else to stop:");
+                if (!in.nextLine().trim().equalsIgnoreCase("n")) {
+                    return;
+                }
+                page++;
             }
+        } catch (SQLException | IOException e) {
+            // The session's own stream, so a remote patron sees why the listing stopped
+            out.println("Error fetching catalog: " + e.getMessage());
+            System.err.println("Error fetching catalog: " + e.getMessage());
+        }
+    }
 
-            // Start transaction
-            connection.setAutoCommit(false);
+    static void searchCatalog(Scanner in, PrintStream out) {
+        out.println("Enter title, author or genre to search for:");
+        String query = in.nextLine().trim();
+        // A blank or one- or two-letter query would list most of the catalog
+        if (query.length() < NGramSearchEngine.GRAM) {
+            out.println("Enter at least " + NGramSearchEngine.GRAM + " characters to search.");
+            return;
+        }
+        long start = System.nanoTime();
+        List<Book> results = bookSearch.search(query);
+        Metrics.recordSince("op.search", start);
+        if (!results.isEmpty()) {
+            results.sort(Comparator.comparing(Book::getId));
+            results.forEach(out::println);
+            return;
+        }
+        // Nothing matched as typed; offer the closest titles/authors instead
+        start = System.nanoTime();
+        List<Book> suggestions = bookSearch.fuzzySearch(query, envInt("FUZZY_SEARCH_LIMIT", 20));
+        Metrics.recordSince("op.fuzzySearch", start);
+        if (suggestions.isEmpty()) {
+            out.println("No matching books found.");
+            return;
+        }
+        out.println("No exact matches. Did you mean:");
+        suggestions.forEach(out::println);
+    }
 
-            // Insert into userbook table
-            PreparedStatement insertStmt = connection.prepareStatement(
-                    "INSERT INTO userbook (user_id, book_id) VALUES (?, ?)");
-            insertStmt.setString(1, userId);
-            insertStmt.setString(2, bookId);
-            insertStmt.executeUpdate();
+    static void browseCatalog(Scanner in, PrintStream out) {
+        out.println("Genres: " + String.join(", ", catalogIndex.genres()));
+        out.println("Enter Genre (blank for any):");
+        String genre = blankToNull(in.nextLine());
+        out.println("Enter Author (blank for any):");
+        String author = blankToNull(in.nextLine());
+        out.println("Only show available books? (y/n):");
+        boolean availableOnly = in.nextLine().trim().equalsIgnoreCase("y");
 
-            // Update available copies
-            PreparedStatement updateStmt = connection.prepareStatement(
-                    "UPDATE books SET availableCopies = availableCopies - 1 WHERE id = ?");
-            updateStmt.setString(1, bookId);
-            updateStmt.executeUpdate();
+        out.println("\n--- Books per Genre ---");
+        Map<String, Integer> counts = catalogIndex.countByGenre(author, availableOnly);
+        counts.forEach((name, count) -> out.println(name + ": " + count));
+        int total = genre != null ? counts.getOrDefault(genre, 0)
+                : counts.values().stream().mapToInt(Integer::intValue).sum();
 
-            // Commit transaction
-            connection.commit();
-            connection.setAutoCommit(true);
+        // Paged like View Catalog, so a browse with no facets never holds the whole catalog
+        int pageSize = catalogPager.getPageSize();
+        out.println("\n--- Matching Books (" + total + ") ---");
+        String cursor = "";
+        while (true) {
+            long start = System.nanoTime();
+            List<Book> page = catalogIndex.find(genre, author, availableOnly, cursor, pageSize);
+            Metrics.recordSince("op.browse", start);
+            page.forEach(out::println);
+            if (page.size() < pageSize) {
+                return;
+            }
+            out.println("Enter n for the next page, anything else to stop:");
+            if (!in.nextLine().trim().equalsIgnoreCase("n")) {
+                return;
+            }
+            cursor = page.get(page.size() - 1).getId();
+        }
+    }
 
-            // Update in-memory data
-            book.setAvailableCopies(book.getAvailableCopies() - 1);
-            ((RegularUser) users.get(userId)).borrowBook(bookId);
+    static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
 
-            return true;
-        } catch (SQLException e) {
-            try {
-                connection.rollback();
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                System.err.println("Error during rollback: " + ex.getMessage());
+    static boolean borrowBook(String userId, String bookId) {
+        long start = System.nanoTime();
+        boolean borrowed = false;
+        try {
+            if (users.get(userId) instanceof RegularUser user) {
+                long dueAt = dueDateFrom(System.currentTimeMillis());
+                borrowed = user.borrowBook(bookId, dueAt);
+                if (borrowed) {
+                    loanMonitor.track(userId, bookId, dueAt);
+                }
             }
-            System.err.println("Error borrowing book: " + e.getMessage());
-            return false;
+            return borrowed;
+        } finally {
+            Book book = books.get(bookId);
+            if (book != null) {
+                catalogIndex.refreshAvailability(book);
+                if (borrowed) {
+                    popularity.recordBorrow(bookId, book.getGenre());
+                }
+            }
+            Metrics.counter(borrowed ? "op.borrowBook.succeeded" : "op.borrowBook.failed").increment();
+            Metrics.recordSince("op.borrowBook", start);
         }
     }
 
     static boolean returnBook(String userId, String bookId) {
+        long start = System.nanoTime();
+        boolean returned = false;
         try {
-            // Check if the user has borrowed this book
-            PreparedStatement checkStmt = connection.prepareStatement(
-                    "SELECT 1 FROM userbook WHERE user_id = ? AND book_id = ?");
-            checkStmt.setString(1, userId);
-            checkStmt.setString(2, bookId);
-            ResultSet rs = checkStmt.executeQuery();
-            if (!rs.next()) {
-                return false;
+            if (users.get(userId) instanceof RegularUser user) {
+                returned = user.returnBook(bookId);
+            }
+            if (returned) {
+                loanMonitor.untrack(userId, bookId);
+                Book book = books.get(bookId);
+                if (book != null) {
+                    catalogIndex.refreshAvailability(book);
+                    popularity.recordReturn(bookId, book.getGenre());
+                }
             }
+            return returned;
+        } finally {
+            Metrics.counter(returned ? "op.returnBook.succeeded" : "op.returnBook.failed").increment();
+            Metrics.recordSince("op.returnBook", start);
+        }
+    }
 
-            // Start transaction
-            connection.setAutoCommit(false);
+    // A renewal is due one loan period from now, not from the old due date
+    static boolean renewBook(String userId, String bookId) {
+        long start = System.nanoTime();
+        boolean renewed = false;
+        try {
+            if (users.get(userId) instanceof RegularUser user) {
+                long dueAt = dueDateFrom(System.currentTimeMillis());
+                renewed = user.renewBook(bookId, dueAt);
+                if (renewed) {
+                    loanMonitor.track(userId, bookId, dueAt);
+                }
+            }
+            return renewed;
+        } finally {
+            Metrics.counter(renewed ? "op.renewBook.succeeded" : "op.renewBook.failed").increment();
+            Metrics.recordSince("op.renewBook", start);
+        }
+    }
 
-            // Delete from userbook table
-            PreparedStatement deleteStmt = connection.prepareStatement(
-                    "DELETE FROM userbook WHERE user_id = ? AND book_id = ?");
-            deleteStmt.setString(1, userId);
-            deleteStmt.setString(2, bookId);
-            deleteStmt.executeUpdate();
+    static long dueDateFrom(long borrowedAtMillis) {
+        return borrowedAtMillis + loanPeriodMillis;
+    }
 
-            // Update available copies
-            PreparedStatement updateStmt = connection.prepareStatement(
-                    "UPDATE books SET availableCopies = availableCopies + 1 WHERE id = ?");
-            updateStmt.setString(1, bookId);
-            updateStmt.executeUpdate();
+    static String formatDueDate(String userId, String bookId) {
+        LoanMonitor.Loan loan = loanMonitor.find(userId, bookId);
+        return formatDueDate(userId, bookId, loan == null ? 0 : loan.getDueAtMillis());
+    }
 
-            // Commit transaction
-            connection.commit();
-            connection.setAutoCommit(true);
+    static String formatDueDate(String userId, String bookId, long dueAtMillis) {
+        if (dueAtMillis <= 0) {
+            return "?";
+        }
+        String due = DUE_DATE_FORMAT.format(Instant.ofEpochMilli(dueAtMillis));
+        return loanMonitor.isOverdue(userId, bookId) ? due + " (OVERDUE)" : due;
+    }
 
-            // Update in-memory data
+    // Raised once per loan on the loan monitor's thread
+    static void loanOverdue(LoanMonitor.Loan loan) {
+        Metrics.counter("loans.becameOverdue").increment();
+    }
+
+    // Served from the in-memory loan ledger; no database round trip
+    static void viewUserBorrowedBooks(String userId, PrintStream out) {
+        long start = System.nanoTime();
+        out.println("\n--- Your Borrowed Books ---");
+        boolean hasBooks = false;
+        for (String bookId : loanLedger.booksOf(userId)) {
             Book book = books.get(bookId);
             if (book != null) {
-                book.setAvailableCopies(book.getAvailableCopies() + 1);
+                hasBooks = true;
+                out.println(book + " - due " + formatDueDate(userId, bookId));
             }
-            ((RegularUser) users.get(userId)).returnBook(bookId);
+        }
+        if (!hasBooks) {
+            out.println("You haven't borrowed any books yet.");
+        }
+        Metrics.recordSince("op.viewUserBorrowedBooks", start);
+    }
 
-            return true;
-        } catch (SQLException e) {
-            try {
-                connection.rollback();
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                System.err.println("Error during rollback: " + ex.getMessage());
-            }
-            System.err.println("Error returning book: " + e.getMessage());
-            return false;
+    static void viewBookBorrowers(Scanner in, PrintStream out) {
+        out.println("Enter Book ID:");
+        String bookId = in.nextLine();
+        Book book = books.get(bookId);
+        if (book == null) {
+            out.println("Book not found.");
+            return;
+        }
+        List<String> borrowers = loanLedger.borrowersOf(bookId);
+        out.println("\n--- Borrowers of " + book.getTitle() + " ---");
+        for (String userId : borrowers) {
+            User user = users.get(userId);
+            out.printf("User: %s (%s) - due %s%n", user != null ? user.getName() : "?", userId,
+                    formatDueDate(userId, bookId));
+        }
+        if (borrowers.isEmpty()) {
+            out.println("Nobody has borrowed this book.");
         }
     }
 
-    static void viewUserBorrowedBooks(String userId) {
-        try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT b.* FROM books b JOIN userbook ub ON b.id = ub.book_id WHERE ub.user_id = ?");
-            stmt.setString(1, userId);
-            ResultSet rs = stmt.executeQuery();
-
-            System.out.println("\n--- Your Borrowed Books ---");
-            boolean hasBooks = false;
-            while (rs.next()) {
-                hasBooks = true;
-                System.out.println(new Book(
-                        rs.getString("id"),
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        rs.getString("genre"),
-                        rs.getInt("availableCopies")
-                ));
-            }
-            if (!hasBooks) {
-                System.out.println("You haven't borrowed any books yet.");
-            }
-        } catch (SQLException e) {
-            System.err.println("Error fetching borrowed books: " + e.getMessage());
+    // Served from the in-memory popularity sketches; no aggregate queries
+    static void viewPopularity(PrintStream out) {
+        out.println("\n--- Popularity (since startup) ---");
+        out.printf("Borrows: %d total, %d in the last 5 minutes, %d in the last hour, %d in the last 24 hours%n",
+                popularity.getTotalBorrows(), popularity.borrowsInLast(5 * 60_000L),
+                popularity.borrowsInLast(3_600_000L), popularity.borrowsInLast(86_400_000L));
+        out.printf("Returns: %d total, %d in the last 5 minutes, %d in the last hour, %d in the last 24 hours%n",
+                popularity.getTotalReturns(), popularity.returnsInLast(5 * 60_000L),
+                popularity.returnsInLast(3_600_000L), popularity.returnsInLast(86_400_000L));
+
+        out.println("Most borrowed books:");
+        List<Map.Entry<String, Long>> top = popularity.topBooks();
+        for (int i = 0; i < top.size(); i++) {
+            Book book = books.get(top.get(i).getKey());
+            out.printf("%d. %s (%s) - ~%d borrows%n", i + 1,
+                    book != null ? book.getTitle() : "?", top.get(i).getKey(), top.get(i).getValue());
+        }
+        if (top.isEmpty()) {
+            out.println("No borrows yet.");
         }
+
+        out.println("Borrows by genre:");
+        popularity.genreCounts().forEach((genre, counts) ->
+                out.printf("%s: %d borrows, %d returns%n", genre, counts[0], counts[1]));
     }
 
-    static void viewAllBorrowedBooks() {
+    // Served from the loan monitor, which already knows which loans are overdue; no table scan
+    static void viewOverdueLoans(PrintStream out) {
+        List<LoanMonitor.Loan> overdue = loanMonitor.overdueLoans();
+        out.println("\n--- Overdue Loans (" + overdue.size() + ") ---");
+        for (LoanMonitor.Loan loan : overdue) {
+            User user = users.get(loan.getUserId());
+            Book book = books.get(loan.getBookId());
+            out.printf("User: %s (%s) - Book: %s (%s) - due %s%n", user != null ? user.getName() : "?",
+                    loan.getUserId(), book != null ? book.getTitle() : "?", loan.getBookId(),
+                    DUE_DATE_FORMAT.format(Instant.ofEpochMilli(loan.getDueAtMillis())));
+        }
+        if (overdue.isEmpty()) {
+            out.println("No loans are overdue.");
+        }
+    }
+
+    static void viewAllBorrowedBooks(PrintStream out) {
+        long start = System.nanoTime();
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "SELECT u.id as user_id, u.name as user_name, b.id as book_id, b.title as book_title " +
-                            "FROM userbook ub " +
-                            "JOIN users u ON ub.user_id = u.id " +
-                            "JOIN books b ON ub.book_id = b.id " +
-                            "ORDER BY u.name");
-            ResultSet rs = stmt.executeQuery();
-
-            System.out.println("\n--- All Borrowed Books ---");
-            boolean hasBorrowings = false;
-            while (rs.next()) {
-                hasBorrowings = true;
-                System.out.printf("User: %s (%s) - Book: %s (%s)%n",
-                        rs.getString("user_name"),
-                        rs.getString("user_id"),
-                        rs.getString("book_title"),
-                        rs.getString("book_id"));
-            }
-            if (!hasBorrowings) {
-                System.out.println("No books are currently borrowed.");
+            List<String[]> loans = store.listLoans();
+            out.println("\n--- All Borrowed Books ---");
+            for (String[] loan : loans) {
+                out.printf("User: %s (%s) - Book: %s (%s) - due %s%n", loan[1], loan[0], loan[3], loan[2],
+                        formatDueDate(loan[0], loan[2], Long.parseLong(loan[4])));
+            }
+            if (loans.isEmpty()) {
+                out.println("No books are currently borrowed.");
             }
         } catch (SQLException e) {
             System.err.println("Error fetching all borrowed books: " + e.getMessage());
+        } finally {
+            Metrics.recordSince("op.viewAllBorrowedBooks", start);
         }
     }
 
     static void loadBorrowedBooksFromDB() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM userbook");
-            while (rs.next()) {
-                String userId = rs.getString("user_id");
-                String bookId = rs.getString("book_id");
-
-                User user = users.get(userId);
-                if (user != null && user.getRole() == Role.REGULAR) {
-                    ((RegularUser) user).borrowBook(bookId);
-                }
-            }
+            store.forEachLoan(LibraryApp::applyLoadedLoan);
         } catch (SQLException e) {
+            inSyncWithDatabase = false;
             System.err.println("Error loading borrowed books: " + e.getMessage());
         }
     }
 
-    static void addBook() {
-        System.out.println("Enter Book ID:");
-        String id = scanner.nextLine();
-        System.out.println("Enter Title:");
-        String title = scanner.nextLine();
-        System.out.println("Enter Author:");
-        String author = scanner.nextLine();
-        System.out.println("Enter Genre:");
-        String genre = scanner.nextLine();
-        System.out.println("Enter Available Copies:");
-        int copies = Integer.parseInt(scanner.nextLine());
+    // Already persisted; only the in-memory ledger and loan monitor need the loan. Both are kept in
+    // full even in bounded cache mode, so this never pulls the user or book into memory. Loans from
+    // before due dates were kept are given a full loan period from now.
+    static void applyLoadedLoan(String userId, String bookId, long dueAtMillis) {
+        loanLedger.add(userId, bookId);
+        loanMonitor.track(userId, bookId, dueAtMillis > 0 ? dueAtMillis : dueDateFrom(System.currentTimeMillis()));
+    }
+
+    static void addBook(Scanner in, PrintStream out) {
+        out.println("Enter Book ID:");
+        String id = in.nextLine();
+        out.println("Enter Title:");
+        String title = in.nextLine();
+        out.println("Enter Author:");
+        String author = in.nextLine();
+        out.println("Enter Genre:");
+        String genre = in.nextLine();
+        out.println("Enter Available Copies:");
+        int copies = Integer.parseInt(in.nextLine());
 
         Book book = new Book(id, title, author, genre, copies);
-        books.put(id, book);
-        genres.add(genre);
-        saveBookToDB(book);
-        System.out.println("Book added successfully.");
+        synchronized (newBookLock) {
+            if (books.containsKey(id)) {
+                out.println("A book with that ID already exists.");
+                return;
+            }
+            if (!saveBookToDB(book)) {
+                out.println("Book could not be added.");
+                return;
+            }
+            books.put(id, book);
+        }
+        catalogIndex.add(book);
+        bookSearch.add(book);
+        out.println("Book added successfully.");
     }
 
-    static void editBook() {
-        System.out.println("Enter Book ID to edit:");
-        String id = scanner.nextLine();
+    static void importBooks(Scanner in, PrintStream out) {
+        out.println("Enter path of the CSV/TSV file (id, title, author, genre, availableCopies):");
+        Path file = Path.of(in.nextLine().trim());
+        out.println("Start from line (blank for the beginning):");
+        String start = in.nextLine().trim();
+        long startLine = start.isEmpty() ? 1 : Long.parseLong(start);
+        Path rejectFile = file.resolveSibling(file.getFileName() + ".rejected");
+
+        BookImporter importer = new BookImporter(store,
+                envInt("IMPORT_BATCH_SIZE", 1000),
+                envInt("IMPORT_CHUNK_SIZE", 10000),
+                // With the bounded cache this asks the store without caching what it finds
+                books::containsKey,
+                LibraryApp::addLoadedBook);
+        try {
+            BookImporter.Report report = importer.importFile(file, startLine, rejectFile, out);
+            out.println(report);
+            if (report.rejected > 0) {
+                out.println("Rejected rows were written to " + rejectFile + ".");
+            }
+        } catch (IOException e) {
+            out.println("Could not read " + file + ": " + e.getMessage());
+        }
+    }
+
+    static void editBook(Scanner in, PrintStream out) {
+        out.println("Enter Book ID to edit:");
+        String id = in.nextLine();
         Book book = books.get(id);
         if (book == null) {
-            System.out.println("Book not found.");
+            out.println("Book not found.");
             return;
         }
+        // What the admin is shown; the edit is checked against it when it is saved
+        Book seen = copyOf(book);
 
-        System.out.println("Enter new Title (current: " + book.getTitle() + "):");
-        String title = scanner.nextLine();
-        System.out.println("Enter new Author (current: " + book.getAuthor() + "):");
-        String author = scanner.nextLine();
-        System.out.println("Enter new Genre (current: " + book.getGenre() + "):");
-        String genre = scanner.nextLine();
-        System.out.println("Enter new Available Copies (current: " + book.getAvailableCopies() + "):");
-        int copies = Integer.parseInt(scanner.nextLine());
-
-        book.setTitle(title);
-        book.setAuthor(author);
-        book.setGenre(genre);
-        book.setAvailableCopies(copies);
-        genres.add(genre);
-        updateBookInDB(book);
-        System.out.println("Book updated successfully.");
-    }
-
-    static void deleteBook() {
-        System.out.println("Enter Book ID to delete:");
-        String id = scanner.nextLine();
-        if (books.remove(id) != null) {
-            deleteBookFromDB(id);
-            System.out.println("Book deleted successfully.");
-        } else {
-            System.out.println("Book not found.");
+        out.println("Enter new Title (current: " + seen.getTitle() + "):");
+        String title = in.nextLine();
+        out.println("Enter new Author (current: " + seen.getAuthor() + "):");
+        String author = in.nextLine();
+        out.println("Enter new Genre (current: " + seen.getGenre() + "):");
+        String genre = in.nextLine();
+        out.println("Enter new Available Copies (current: " + seen.getAvailableCopies() + "):");
+        int copies = Integer.parseInt(in.nextLine());
+
+        long start = System.nanoTime();
+        boolean updated = updateBookVersioned(book, seen, new Book(id, title, author, genre, 0),
+                copies - seen.getAvailableCopies(), out);
+        Metrics.counter(updated ? "op.editBook.succeeded" : "op.editBook.failed").increment();
+        Metrics.recordSince("op.editBook", start);
+        if (updated) {
+            out.println("Book updated successfully.");
         }
     }
 
-    static void registerUser() {
-        System.out.println("Enter User ID:");
-        String id = scanner.nextLine();
-        System.out.println("Enter Name:");
-        String name = scanner.nextLine();
-        System.out.println("Enter Role (ADMIN/REGULAR):");
-        Role role = Role.valueOf(scanner.nextLine().toUpperCase());
+    // Saves an edit without locking the row: descriptive fields are compare-and-set against the
+    // version the admin saw, and copies move by the difference the admin made, so loans taken while
+    // the prompts were open survive. If another edit got in first, fields this edit left alone take
+    // the other edit's values and it is retried; both changing the same field is reported instead.
+    static boolean updateBookVersioned(Book book, Book seen, Book edited, int copiesDelta, PrintStream out) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long expectedVersion = seen.getVersion();
+            Book current;
+            try {
+                if (saveBookEdit(book, edited, expectedVersion, copiesDelta)) {
+                    catalogIndex.add(book);
+                    bookSearch.update(book, book.getId());
+                    return true;
+                }
+                current = journal != null ? copyOf(book) : store.findBook(book.getId());
+            } catch (SQLException e) {
+                // A journal that couldn't be written changed nothing; a failed database write may have
+                if (journal == null) {
+                    inSyncWithDatabase = false;
+                }
+                System.err.println("Error updating book: " + e.getMessage());
+                out.println("Book could not be updated.");
+                return false;
+            }
 
-        User user;
-        if (role == Role.ADMIN) {
-            user = new Admin(id, name);
-        } else {
-            user = new RegularUser(id, name, (Map<String, Book>) new ArrayList<>());
+            if (current == null) {
+                out.println("The book was deleted meanwhile.");
+                return false;
+            }
+            if (current.getVersion() == expectedVersion) {
+                out.printf("Cannot remove %d copies: only %d are on the shelf.%n",
+                        -copiesDelta, current.getAvailableCopies());
+                return false;
+            }
+            String title = mergeField(seen.getTitle(), edited.getTitle(), current.getTitle());
+            String author = mergeField(seen.getAuthor(), edited.getAuthor(), current.getAuthor());
+            String genre = mergeField(seen.getGenre(), edited.getGenre(), current.getGenre());
+            if (title == null || author == null || genre == null) {
+                out.println("Someone else edited this book meanwhile: " + current + ". Your edit was not applied.");
+                return false;
+            }
+            edited = new Book(edited.getId(), title, author, genre, 0);
+            seen = current;
         }
+        out.println("The book kept changing; your edit was not applied.");
+        return false;
+    }
 
-        users.put(id, user);
-        saveUserToDB(user);
-        System.out.println("User registered successfully.");
+    // The edited value if only this edit changed the field, the other value if only the other
+    // edit did, null if both changed it differently
+    static String mergeField(String seen, String mine, String theirs) {
+        if (mine.equals(seen)) return theirs;
+        if (theirs.equals(seen) || theirs.equals(mine)) return mine;
+        return null;
     }
 
-    static void saveBookToDB(Book book) {
-        try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "INSERT INTO books VALUES (?, ?, ?, ?, ?)");
-            stmt.setString(1, book.getId());
-            stmt.setString(2, book.getTitle());
-            stmt.setString(3, book.getAuthor());
-            stmt.setString(4, book.getGenre());
-            stmt.setInt(5, book.getAvailableCopies());
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error saving book: " + e.getMessage());
+    // False when the version moved on or the copies would go negative. With the journal, memory is
+    // ahead of MySQL, so the check runs against the in-memory book and the edit is journaled; the
+    // lock is held until the record is on disk, so no other edit can pass the same version check.
+    // Copies being removed are taken first (borrowers can't get them meanwhile) and given back if
+    // the record can't be written; copies being added only appear once it is.
+    static boolean saveBookEdit(Book book, Book edited, long expectedVersion, int copiesDelta) throws SQLException {
+        if (journal != null) {
+            synchronized (book.lock()) {
+                if (book.getVersion() != expectedVersion || (copiesDelta < 0 && !book.tryAddCopies(copiesDelta))) {
+                    return false;
+                }
+                if (!journal.record(MutationType.EDIT_BOOK, book.getId(), edited.getTitle(), edited.getAuthor(),
+                        edited.getGenre(), Integer.toString(copiesDelta), Long.toString(expectedVersion))) {
+                    if (copiesDelta < 0) {
+                        book.addCopies(-copiesDelta);
+                    }
+                    throw new SQLException("The edit could not be written to the journal");
+                }
+                if (copiesDelta > 0) {
+                    book.addCopies(copiesDelta);
+                }
+                applyEdit(book, edited, expectedVersion + 1);
+            }
+            return true;
+        }
+        if (!store.updateBook(edited, expectedVersion, copiesDelta)) {
+            return false;
+        }
+        synchronized (book.lock()) {
+            book.addCopies(copiesDelta);
+            applyEdit(book, edited, expectedVersion + 1);
+        }
+        return true;
+    }
+
+    static void applyEdit(Book book, Book edited, long version) {
+        book.setTitle(edited.getTitle());
+        book.setAuthor(edited.getAuthor());
+        book.setGenre(edited.getGenre());
+        book.setVersion(version);
+    }
+
+    static Book copyOf(Book book) {
+        synchronized (book.lock()) {
+            Book copy = new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(),
+                    book.getAvailableCopies());
+            copy.setVersion(book.getVersion());
+            return copy;
+        }
+    }
+
+    static void deleteBook(Scanner in, PrintStream out) {
+        out.println("Enter Book ID to delete:");
+        String id = in.nextLine();
+        // get() rather than remove(): a bounded cache may not hold the book yet
+        if (books.get(id) != null) {
+            if (!deleteBookFromDB(id)) {
+                out.println("Book could not be deleted.");
+                return;
+            }
+            books.remove(id);
+            catalogIndex.remove(id);
+            bookSearch.remove(id);
+            dropLoansOf(id);
+            out.println("Book deleted successfully.");
+        } else {
+            out.println("Book not found.");
+        }
+    }
+
+    static void registerUser(Scanner in, PrintStream out) {
+        out.println("Enter User ID:");
+        String id = in.nextLine();
+        out.println("Enter Name:");
+        String name = in.nextLine();
+        out.println("Enter Role (ADMIN/REGULAR):");
+        Role role = Role.valueOf(in.nextLine().toUpperCase());
+
+        User user = newUser(id, name, role);
+        synchronized (newUserLock) {
+            if (users.containsKey(id)) {
+                out.println("A user with that ID already exists.");
+                return;
+            }
+            if (!saveUserToDB(user)) {
+                out.println("User could not be registered.");
+                return;
+            }
+            users.put(id, user);
         }
+        out.println("User registered successfully.");
     }
 
-    static void updateBookInDB(Book book) {
+    // The *ToDB methods persist (or journal) a change before the caller applies it in memory, and
+    // return false if that failed, in which case memory must be left as it was. A failed journal
+    // write changed nothing anywhere; a failed database write may have, so that marks memory out of sync.
+    static boolean saveBookToDB(Book book) {
+        if (journal != null) {
+            return journal.record(MutationType.SAVE_BOOK, book.getId(), book.getTitle(), book.getAuthor(),
+                    book.getGenre(), Integer.toString(book.getAvailableCopies()));
+        }
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "UPDATE books SET title=?, author=?, genre=?, availableCopies=? WHERE id=?");
-            stmt.setString(1, book.getTitle());
-            stmt.setString(2, book.getAuthor());
-            stmt.setString(3, book.getGenre());
-            stmt.setInt(4, book.getAvailableCopies());
-            stmt.setString(5, book.getId());
-            stmt.executeUpdate();
+            store.saveBook(book);
+            return true;
         } catch (SQLException e) {
-            System.err.println("Error updating book: " + e.getMessage());
+            inSyncWithDatabase = false;
+            System.err.println("Error saving book: " + e.getMessage());
+            return false;
         }
     }
 
-    static void deleteBookFromDB(String bookId) {
+    static boolean deleteBookFromDB(String bookId) {
+        if (journal != null) {
+            return journal.record(MutationType.DELETE_BOOK, bookId);
+        }
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "DELETE FROM books WHERE id=?");
-            stmt.setString(1, bookId);
-            stmt.executeUpdate();
+            store.deleteBook(bookId);
+            return true;
         } catch (SQLException e) {
+            inSyncWithDatabase = false;
             System.err.println("Error deleting book: " + e.getMessage());
+            return false;
         }
     }
 
-    static void saveUserToDB(User user) {
+    static boolean saveUserToDB(User user) {
+        if (journal != null) {
+            return journal.record(MutationType.SAVE_USER, user.getId(), user.getName(), user.getRole().name());
+        }
         try {
-            PreparedStatement stmt = connection.prepareStatement(
-                    "INSERT INTO users VALUES (?, ?, ?)");
-            stmt.setString(1, user.getId());
-            stmt.setString(2, user.getName());
-            stmt.setString(3, user.getRole().name());
-            stmt.executeUpdate();
+            store.saveUser(user);
+            return true;
         } catch (SQLException e) {
+            inSyncWithDatabase = false;
             System.err.println("Error saving user: " + e.getMessage());
+            return false;
         }
     }
 
     static void loadBooksFromDB() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM books");
-            while (rs.next()) {
-                Book book = new Book(
-                        rs.getString("id"),
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        rs.getString("genre"),
-                        rs.getInt("availableCopies")
-                );
-                books.put(book.getId(), book);
-                genres.add(book.getGenre());
-            }
+            store.forEachBook(LibraryApp::addLoadedBook);
         } catch (SQLException e) {
+            inSyncWithDatabase = false;
             System.err.println("Error loading books: " + e.getMessage());
         }
     }
 
+    static void addLoadedBook(Book book) {
+        books.put(book.getId(), book);
+        catalogIndex.add(book);
+        bookSearch.add(book);
+    }
+
     static void loadUsersFromDB() {
         try {
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM users");
-            while (rs.next()) {
-                String id = rs.getString("id");
-                String name = rs.getString("name");
-                Role role = Role.valueOf(rs.getString("role"));
-
-                if (role == Role.ADMIN) {
-                    users.put(id, new Admin(id, name));
-                } else {
-                    users.put(id, new RegularUser(id, name, (Map<String, Book>) new ArrayList<>()));
-                }
-            }
+            store.forEachUser(LibraryApp::addLoadedUser);
         } catch (SQLException e) {
+            inSyncWithDatabase = false;
             System.err.println("Error loading users: " + e.getMessage());
         }
     }
+
+    static void addLoadedUser(String id, String name, Role role) {
+        users.put(id, newUser(id, name, role));
+    }
+
+    static User newUser(String id, String name, Role role) {
+        if (role == Role.ADMIN) {
+            return new Admin(id, name);
+        }
+        return new RegularUser(id, name, books, loanLedger, loanPersistence);
+    }
 }
\ No newline at end of file
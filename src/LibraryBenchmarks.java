@@ -0,0 +1,120 @@
+import benchmarks.BenchmarkRunner;
+import entities.Book;
+import entities.RegularUser;
+import interfaces.LibraryStore;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Store-bound benchmarks for the loan and startup-load paths, run through the LibraryStore
+// interface. By default they use the embedded store (STORE_SHARDS applies), so no database is
+// needed; LIBRARY_STORE=mysql connects with the same DB_* variables as the app instead, so point
+// them at a scratch schema: rows prefixed "bench-" are created and removed again. Sizes come from
+// BENCH_CATALOG_SIZES and BENCH_USER_SIZES.
+public class LibraryBenchmarks {
+    private static final String PREFIX = "bench-";
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = BenchmarkRunner.fromEnvironment();
+        if ("mysql".equalsIgnoreCase(System.getenv("LIBRARY_STORE"))) {
+            LibraryApp.openStore();
+        } else {
+            LibraryApp.useStore(LibraryApp.newMemoryStore(null, 0));
+        }
+        LibraryApp.initializeStore();
+        try {
+            for (int catalogSize : BenchmarkRunner.envSizes("BENCH_CATALOG_SIZES", 1_000, 10_000)) {
+                for (int userSize : BenchmarkRunner.envSizes("BENCH_USER_SIZES", 100, 1_000)) {
+                    String params = "catalog=" + catalogSize + " users=" + userSize;
+                    deleteBenchRows();
+                    clearMemory();
+                    seed(catalogSize, userSize);
+
+                    Random random = new Random(11);
+                    runner.run("borrowBook+returnBook", params, () -> {
+                        String userId = "bench-u" + random.nextInt(userSize);
+                        String bookId = "bench-b" + random.nextInt(catalogSize);
+                        return LibraryApp.borrowBook(userId, bookId) && LibraryApp.returnBook(userId, bookId);
+                    });
+                    runner.run("loadBooksFromDB", params, () -> {
+                        clearMemory();
+                        LibraryApp.loadBooksFromDB();
+                        return LibraryApp.books.size();
+                    });
+                    runner.run("loadUsersFromDB", params, () -> {
+                        LibraryApp.users.clear();
+                        LibraryApp.loadUsersFromDB();
+                        return LibraryApp.users.size();
+                    });
+                    runner.run("loadBorrowedBooksFromDB", params, () -> {
+                        LibraryApp.loadBorrowedBooksFromDB();
+                        return LibraryApp.users.size();
+                    });
+                }
+            }
+        } finally {
+            deleteBenchRows();
+            LibraryApp.shutdown();
+        }
+    }
+
+    static void clearMemory() {
+        for (String id : List.copyOf(LibraryApp.books.keySet())) {
+            LibraryApp.catalogIndex.remove(id);
+            LibraryApp.bookSearch.remove(id);
+        }
+        LibraryApp.books.clear();
+    }
+
+    // Books, users, and a standing loan per ten users so the loan load has rows to read
+    static void seed(int catalogSize, int userSize) throws SQLException {
+        LibraryStore store = LibraryApp.store;
+        List<Book> catalog = new ArrayList<>();
+        for (Book book : benchmarks.SearchBenchmarks.syntheticCatalog(catalogSize, 42)) {
+            catalog.add(new Book(PREFIX + book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(),
+                    book.getAvailableCopies() + 1));
+        }
+        store.saveBooks(catalog, 1_000);
+        for (int i = 0; i < userSize; i++) {
+            store.saveUser(benchUser("bench-u" + i, "Bench User " + i));
+        }
+        // Standing loans belong to separate users so the borrow/return loop never collides with them
+        long dueAt = LibraryApp.dueDateFrom(System.currentTimeMillis());
+        for (int i = 0; i < userSize / 10; i++) {
+            store.saveUser(benchUser("bench-l" + i, "Bench Loaner " + i));
+            store.recordBorrow("bench-l" + i, "bench-b" + (i % catalogSize), dueAt);
+        }
+        LibraryApp.loadBooksFromDB();
+        for (int i = 0; i < userSize; i++) {
+            LibraryApp.users.put("bench-u" + i, benchUser("bench-u" + i, "Bench User " + i));
+        }
+    }
+
+    static RegularUser benchUser(String id, String name) {
+        return new RegularUser(id, name, LibraryApp.books, LibraryApp.loanLedger, LibraryApp.loanPersistence);
+    }
+
+    // Books first, which drops their loans, so the users are free to go
+    static void deleteBenchRows() throws SQLException {
+        LibraryStore store = LibraryApp.store;
+        List<Book> page;
+        while (!(page = store.listBooks(PREFIX, 1_000)).isEmpty() && page.get(0).getId().startsWith(PREFIX)) {
+            for (Book book : page) {
+                if (book.getId().startsWith(PREFIX)) {
+                    store.deleteBook(book.getId());
+                }
+            }
+        }
+        List<String> userIds = new ArrayList<>();
+        store.forEachUser((id, name, role) -> {
+            if (id.startsWith(PREFIX)) {
+                userIds.add(id);
+            }
+        });
+        for (String id : userIds) {
+            store.deleteUser(id);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import benchmarks.BenchmarkRunner;
+import benchmarks.SearchBenchmarks;
+import database.CatalogPager;
+import entities.Book;
+import entities.RegularUser;
+import metrics.LatencyHistogram;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// End-to-end load test against the in-memory store: seeds a synthetic catalog and user base, then
+// drives concurrent patron sessions through the same borrow/return/browse/search code the menus
+// use. The closed model keeps LOAD_SESSIONS sessions busy back to back; the open model issues
+// operations at LOAD_RATE per second whether or not earlier ones finished, and measures latency
+// from the scheduled start so queueing shows up. Ends with a copies-vs-loans audit for overselling.
+public class LoadGenerator {
+    enum Operation { BORROW, RETURN, BROWSE, SEARCH }
+
+    static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rejected = new LongAdder(); // e.g. no copy left, nothing to return
+        final LongAdder errors = new LongAdder();
+    }
+
+    static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    static final Map<Operation, Stats> stats = new HashMap<>();
+    static Operation[] mix;
+    static List<Book> catalog;
+    static int userCount;
+
+    public static void main(String[] args) throws Exception {
+        int catalogSize = BenchmarkRunner.envInt("LOAD_BOOKS", 10_000);
+        userCount = BenchmarkRunner.envInt("LOAD_USERS", 1_000);
+        int sessions = BenchmarkRunner.envInt("LOAD_SESSIONS", 16);
+        int warmupSeconds = BenchmarkRunner.envInt("LOAD_WARMUP_SECONDS", 5);
+        int durationSeconds = BenchmarkRunner.envInt("LOAD_DURATION_SECONDS", 30);
+        String model = System.getenv().getOrDefault("LOAD_MODEL", "closed").trim().toLowerCase();
+        mix = parseMix(System.getenv().getOrDefault("LOAD_MIX", "borrow=40,return=40,browse=10,search=10"));
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+
+        Map<String, Integer> initialCopies = seed(catalogSize);
+        System.out.printf("Seeded %d books and %d users; model=%s sessions=%d warmup=%ds duration=%ds%n",
+                catalogSize, userCount, model, sessions, warmupSeconds, durationSeconds);
+
+        long elapsedNanos;
+        if (model.equals("open")) {
+            elapsedNanos = runOpen(sessions, BenchmarkRunner.envInt("LOAD_RATE", 1_000), warmupSeconds, durationSeconds);
+        } else {
+            elapsedNanos = runClosed(sessions, BenchmarkRunner.envInt("LOAD_THINK_MS", 0), warmupSeconds, durationSeconds);
+        }
+
+        report(elapsedNanos);
+        audit(initialCopies);
+        LibraryApp.store.close();
+    }
+
+    static Map<String, Integer> seed(int catalogSize) throws Exception {
+        if ("compact".equalsIgnoreCase(System.getenv("CATALOG_STORAGE"))) {
+            LibraryApp.useCompactCatalog();
+        }
+        LibraryApp.store = LibraryApp.newMemoryStore(null, 0);
+        LibraryApp.loanPersistence = LibraryApp.store;
+        LibraryApp.catalogPager = new CatalogPager(LibraryApp.store, 20);
+        LibraryApp.initializeStore();
+
+        catalog = SearchBenchmarks.syntheticCatalog(catalogSize, 42);
+        LibraryApp.store.saveBooks(catalog, 1_000);
+        for (int i = 0; i < userCount; i++) {
+            LibraryApp.store.saveUser(new RegularUser("load-u" + i, "Load User " + i, LibraryApp.books,
+                    LibraryApp.loanLedger, LibraryApp.loanPersistence));
+        }
+        LibraryApp.loadBooksFromDB();
+        LibraryApp.loadUsersFromDB();
+
+        Map<String, Integer> initialCopies = new HashMap<>();
+        for (Book book : catalog) {
+            initialCopies.put(book.getId(), book.getAvailableCopies());
+        }
+        return initialCopies;
+    }
+
+    static long runClosed(int sessions, int thinkMillis, int warmupSeconds, int durationSeconds)
+            throws InterruptedException {
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService workers = Executors.newFixedThreadPool(sessions);
+        for (int i = 0; i < sessions; i++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < stopAt) {
+                    long start = System.nanoTime();
+                    execute(nextOperation(), start, start >= measureFrom);
+                    if (thinkMillis > 0) {
+                        sleepQuietly(thinkMillis);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationSeconds + warmupSeconds + 60L, TimeUnit.SECONDS);
+        return stopAt - measureFrom;
+    }
+
+    // Poisson arrivals from one scheduler thread; the pool's queue absorbs bursts, up to a bound
+    static long runOpen(int sessions, int ratePerSecond, int warmupSeconds, int durationSeconds)
+            throws InterruptedException {
+        int maxBacklog = BenchmarkRunner.envInt("LOAD_MAX_BACKLOG", 10_000);
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long stopAt = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService workers = Executors.newFixedThreadPool(sessions);
+        AtomicInteger backlog = new AtomicInteger();
+        long dropped = 0;
+        double meanGapNanos = 1e9 / ratePerSecond;
+        Random arrivals = new Random(5);
+
+        long next = System.nanoTime();
+        while (next < stopAt) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            long scheduled = next;
+            boolean measured = scheduled >= measureFrom;
+            if (backlog.get() >= maxBacklog) {
+                if (measured) dropped++;
+            } else {
+                backlog.incrementAndGet();
+                Operation operation = nextOperation();
+                workers.execute(() -> {
+                    backlog.decrementAndGet();
+                    execute(operation, scheduled, measured);
+                });
+            }
+            next += (long) (-Math.log(1 - arrivals.nextDouble()) * meanGapNanos);
+        }
+        workers.shutdown();
+        workers.awaitTermination(60, TimeUnit.SECONDS);
+        if (dropped > 0) {
+            System.out.printf("Dropped %d arrivals: more than %d operations were already queued.%n",
+                    dropped, maxBacklog);
+        }
+        return stopAt - measureFrom;
+    }
+
+    static void execute(Operation operation, long startNanos, boolean measured) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String userId = "load-u" + random.nextInt(userCount);
+        Stats operationStats = stats.get(operation);
+        boolean accepted = true;
+        try {
+            switch (operation) {
+                case BORROW -> accepted = LibraryApp.borrowBook(userId, pickBook(random).getId());
+                case RETURN -> {
+                    List<String> loans = LibraryApp.loanLedger.booksOf(userId);
+                    accepted = !loans.isEmpty()
+                            && LibraryApp.returnBook(userId, loans.get(random.nextInt(loans.size())));
+                }
+                case BROWSE -> {
+                    Book sample = pickBook(random);
+                    LibraryApp.browseCatalog(new Scanner(sample.getGenre() + "\n" + sample.getAuthor() + "\ny\n\n"),
+                            DISCARD);
+                }
+                case SEARCH -> {
+                    String[] words = pickBook(random).getTitle().split(" ");
+                    String query = words.length > 1 ? words[0] + " " + words[1] : words[0];
+                    LibraryApp.searchCatalog(new Scanner(query + "\n"), DISCARD);
+                }
+            }
+        } catch (RuntimeException e) {
+            if (measured) operationStats.errors.increment();
+            return;
+        }
+        if (measured) {
+            operationStats.latency.record(System.nanoTime() - startNanos);
+            if (!accepted) operationStats.rejected.increment();
+        }
+    }
+
+    // Log-uniform over the catalog, so a few titles are hot and run out of copies under load
+    static Book pickBook(ThreadLocalRandom random) {
+        int index = (int) Math.pow(catalog.size(), random.nextDouble()) - 1;
+        return catalog.get(Math.min(index, catalog.size() - 1));
+    }
+
+    static Operation nextOperation() {
+        return mix[ThreadLocalRandom.current().nextInt(mix.length)];
+    }
+
+    // "borrow=40,return=40,browse=10,search=10" -> 100-slot table to draw from
+    static Operation[] parseMix(String spec) {
+        Map<Operation, Integer> weights = new HashMap<>();
+        int total = 0;
+        for (String part : spec.split(",")) {
+            String[] pair = part.split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("LOAD_MIX needs a positive weight: " + spec);
+        }
+        Operation[] table = new Operation[total];
+        int slot = 0;
+        for (Operation operation : Operation.values()) {
+            for (int i = 0; i < weights.getOrDefault(operation, 0); i++) {
+                table[slot++] = operation;
+            }
+        }
+        return table;
+    }
+
+    static void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s %10s %9s %7s%n", "op", "count", "ops/s",
+                "mean us", "p50 us", "p99 us", "p99.9 us", "max us", "rejected", "errors");
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            Stats operationStats = stats.get(operation);
+            LatencyHistogram latency = operationStats.latency;
+            total += latency.getCount();
+            System.out.printf("%-8s %10d %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f %9d %7d%n",
+                    operation.name().toLowerCase(), latency.getCount(), latency.getCount() / seconds,
+                    latency.getMeanNanos() / 1e3, latency.percentileNanos(50) / 1e3,
+                    latency.percentileNanos(99) / 1e3, latency.percentileNanos(99.9) / 1e3,
+                    latency.getMaxNanos() / 1e3, operationStats.rejected.sum(), operationStats.errors.sum());
+        }
+        Stats borrows = stats.get(Operation.BORROW);
+        System.out.printf("Total: %.0f ops/s; successful checkouts: %.0f/s%n", total / seconds,
+                (borrows.latency.getCount() - borrows.rejected.sum()) / seconds);
+    }
+
+    // Every copy is either on the shelf or on loan, in memory and in the store alike
+    static void audit(Map<String, Integer> initialCopies) throws Exception {
+        int oversold = 0;
+        int mismatched = 0;
+        for (Map.Entry<String, Integer> entry : initialCopies.entrySet()) {
+            String bookId = entry.getKey();
+            int available = LibraryApp.books.get(bookId).getAvailableCopies();
+            int stored = LibraryApp.store.findBook(bookId).getAvailableCopies();
+            int onLoan = LibraryApp.loanLedger.countBorrowersOf(bookId);
+            if (available < 0 || stored < 0 || onLoan > entry.getValue()) {
+                oversold++;
+            } else if (available + onLoan != entry.getValue() || stored != available) {
+                mismatched++;
+            }
+        }
+        System.out.printf("Audit: %d oversold books, %d books whose copies and loans don't add up.%n",
+                oversold, mismatched);
+    }
+
+    static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Minimal fixed-time harness: warmup iterations, then measured iterations of a fixed duration,
+// reported as mean ns/op and ops/sec with the spread across iterations. Results are fed to a sink
+// so the JIT can't discard the measured work.
+public class BenchmarkRunner {
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long iterationMillis;
+    private final List<String> report = new ArrayList<>();
+    private volatile Object sink;
+
+    public BenchmarkRunner(int warmupIterations, int measuredIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    // Settings shared by every suite: BENCH_WARMUP, BENCH_ITERATIONS, BENCH_ITERATION_MS
+    public static BenchmarkRunner fromEnvironment() {
+        return new BenchmarkRunner(envInt("BENCH_WARMUP", 3), envInt("BENCH_ITERATIONS", 5),
+                envInt("BENCH_ITERATION_MS", 1000));
+    }
+
+    public void run(String name, String params, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(operation);
+        }
+        double[] nanosPerOp = new double[measuredIterations];
+        for (int i = 0; i < measuredIterations; i++) {
+            nanosPerOp[i] = iterate(operation);
+        }
+
+        double mean = Arrays.stream(nanosPerOp).average().orElse(0);
+        double variance = Arrays.stream(nanosPerOp).map(v -> (v - mean) * (v - mean)).sum()
+                / Math.max(1, measuredIterations - 1);
+        String line = String.format("%-32s %-28s %14.1f ns/op  +/- %5.1f%%  %14.0f ops/s",
+                name, params, mean, mean == 0 ? 0 : 100 * Math.sqrt(variance) / mean, 1e9 / mean);
+        System.out.println(line);
+        report.add(line);
+    }
+
+    public List<String> getReport() {
+        return report;
+    }
+
+    private double iterate(Operation operation) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+        long operations = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            sink = operation.run();
+            operations++;
+        } while ((now = System.nanoTime()) < deadline);
+        return (now - start) / (double) operations;
+    }
+
+    public static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public static int[] envSizes(String name, int... defaults) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaults;
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
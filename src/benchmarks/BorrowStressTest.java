@@ -0,0 +1,124 @@
+package benchmarks;
+
+import database.InMemoryLibraryStore;
+import entities.Book;
+import entities.RegularUser;
+import interfaces.LibraryStore;
+import services.CompactCatalog;
+import services.LoanLedger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Many threads racing for the last copies of one title. Each round STRESS_THREADS patrons are
+// released at once to borrow a book with STRESS_COPIES copies left, through the same RegularUser
+// borrow path the app uses and with the embedded store behind it; once with Book objects and once
+// with the compact catalog. A last pass races for the copies in the store alone, to check its own
+// guard. Every round must end with exactly as many successful borrows as there were copies and
+// with no copies left (never fewer than none), in memory and in the store; otherwise the run fails.
+public class BorrowStressTest {
+    private static final String BOOK_ID = "stress-b";
+    private static final long DUE_AT = Long.MAX_VALUE / 2;
+
+    private interface Attempt {
+        boolean borrow(int patron) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = BenchmarkRunner.envInt("STRESS_THREADS", 64);
+        int copies = BenchmarkRunner.envInt("STRESS_COPIES", 3);
+        int rounds = BenchmarkRunner.envInt("STRESS_ROUNDS", 200);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int failedRounds = 0;
+        try {
+            for (String layout : List.of("objects", "compact", "store only")) {
+                int failed = 0;
+                for (int round = 0; round < rounds; round++) {
+                    if (!round(pool, layout, threads, copies)) {
+                        failed++;
+                    }
+                }
+                System.out.printf("%-32s threads=%d copies=%d %8d rounds, %d failed%n",
+                        "borrow the last copies (" + layout + ")", threads, copies, rounds, failed);
+                failedRounds += failed;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failedRounds > 0) {
+            System.out.println("FAILED: " + failedRounds + " rounds oversold or lost a copy");
+            System.exit(1);
+        }
+        System.out.println("OK: no copy was ever oversold");
+    }
+
+    private static boolean round(ExecutorService pool, String layout, int threads, int copies) throws Exception {
+        LibraryStore store = new InMemoryLibraryStore(null, 0);
+        store.initialize();
+        store.saveBook(new Book(BOOK_ID, "Stress", "Author", "Genre", copies));
+        for (int i = 0; i < threads; i++) {
+            store.saveUser(new RegularUser("stress-u" + i, "Patron " + i, Map.of(), new LoanLedger(), store));
+        }
+
+        Map<String, Book> books = layout.equals("compact") ? new CompactCatalog() : new ConcurrentHashMap<>();
+        books.put(BOOK_ID, new Book(BOOK_ID, "Stress", "Author", "Genre", copies));
+        LoanLedger ledger = new LoanLedger();
+        Attempt attempt;
+        if (layout.equals("store only")) {
+            attempt = patron -> store.recordBorrow("stress-u" + patron, BOOK_ID, DUE_AT);
+        } else {
+            List<RegularUser> patrons = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                patrons.add(new RegularUser("stress-u" + i, "Patron " + i, books, ledger, store));
+            }
+            attempt = patron -> patrons.get(patron).borrowBook(BOOK_ID, DUE_AT);
+        }
+
+        // Every thread waits at the gate, so they all go for the copies at the same moment
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int patron = i;
+            results.add(pool.submit(() -> {
+                ready.countDown();
+                go.await();
+                return attempt.borrow(patron);
+            }));
+        }
+        ready.await();
+        go.countDown();
+        int borrowed = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) {
+                borrowed++;
+            }
+        }
+
+        int stored = store.findBook(BOOK_ID).getAvailableCopies();
+        int[] loans = new int[1];
+        store.forEachLoan((userId, bookId, dueAtMillis) -> loans[0]++);
+        store.close();
+        // More patrons than copies is the interesting case; otherwise everyone gets one
+        int expected = Math.min(copies, threads);
+        boolean ok = borrowed == expected && stored == copies - expected && loans[0] == expected;
+        if (!layout.equals("store only")) {
+            int inMemory = books.get(BOOK_ID).getAvailableCopies();
+            ok &= inMemory == copies - expected && ledger.countBorrowersOf(BOOK_ID) == expected;
+            if (!ok) {
+                System.out.printf("  %s: %d borrowed, %d copies left in memory, %d in the store, %d loans%n",
+                        layout, borrowed, inMemory, stored, loans[0]);
+            }
+        } else if (!ok) {
+            System.out.printf("  %s: %d borrowed, %d copies left in the store, %d loans%n",
+                    layout, borrowed, stored, loans[0]);
+        }
+        return ok;
+    }
+}
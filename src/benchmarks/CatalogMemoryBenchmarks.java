@@ -0,0 +1,87 @@
+package benchmarks;
+
+import entities.Book;
+import interfaces.CatalogBrowser;
+import services.CatalogIndex;
+import services.CompactCatalog;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Heap per book of the default catalog (a map of Book objects plus the browse index) against
+// CATALOG_STORAGE=compact, then lookup and browse costs for both, parameterised by
+// BENCH_CATALOG_BOOKS. Books are generated in chunks with fresh strings, the way rows arrive from
+// the database, so nothing outside the catalog under test holds on to them.
+public class CatalogMemoryBenchmarks {
+    private static final int CHUNK = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = BenchmarkRunner.fromEnvironment();
+        for (int size : BenchmarkRunner.envSizes("BENCH_CATALOG_BOOKS", 100_000, 1_000_000, 2_000_000)) {
+            String params = "books=" + size;
+
+            long heapBefore = usedHeap();
+            Map<String, Book> map = new ConcurrentHashMap<>();
+            fill(map, size);
+            long mapBytes = usedHeap() - heapBefore;
+            CatalogIndex index = new CatalogIndex(map);
+            map.values().forEach(index::add);
+            long indexedBytes = usedHeap() - heapBefore;
+            run(runner, "map", params, map, index, size);
+            map = null;
+            index = null;
+
+            heapBefore = usedHeap();
+            CompactCatalog compact = new CompactCatalog();
+            fill(compact, size);
+            long compactBytes = usedHeap() - heapBefore;
+            run(runner, "compact", params, compact, compact, size);
+
+            System.out.printf("%-32s %-28s %8d B/book map, %d with index, %d compact (%.1fx smaller)%n",
+                    "heap per book", params, mapBytes / size, indexedBytes / size, compactBytes / size,
+                    indexedBytes / (double) compactBytes);
+            compact = null;
+        }
+    }
+
+    private static void run(BenchmarkRunner runner, String name, String params, Map<String, Book> books,
+                            CatalogBrowser browser, int size) throws Exception {
+        Random random = new Random(7);
+        runner.run("get+title (" + name + ")", params,
+                () -> books.get("b" + random.nextInt(size)).getTitle());
+        runner.run("borrow+return (" + name + ")", params, () -> {
+            Book book = books.get("b" + random.nextInt(size));
+            boolean borrowed = book.tryDecreaseCopies();
+            if (borrowed) {
+                book.increaseCopies();
+            }
+            return borrowed;
+        });
+        List<String> genres = browser.genres();
+        runner.run("browse genre+author (" + name + ")", params, () -> browser.find(
+                genres.get(random.nextInt(genres.size())), "Author " + random.nextInt(Math.max(1, size / 10)), true,
+                "", 20));
+    }
+
+    private static void fill(Map<String, Book> books, int size) {
+        for (int offset = 0; offset < size; offset += CHUNK) {
+            int count = Math.min(CHUNK, size - offset);
+            // Same title/author/genre distribution as the search benchmarks, with ids spread over the whole catalog
+            List<Book> chunk = SearchBenchmarks.syntheticCatalog(count, 42 + offset);
+            for (int i = 0; i < count; i++) {
+                Book book = chunk.get(i);
+                String id = "b" + (offset + i);
+                books.put(id, new Book(id, book.getTitle(), "Author " + (offset + i) % Math.max(1, size / 10),
+                        new String(book.getGenre()), book.getAvailableCopies()));
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
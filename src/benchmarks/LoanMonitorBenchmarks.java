@@ -0,0 +1,79 @@
+package benchmarks;
+
+import services.LoanMonitor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Due-date tracking cost as the number of open loans grows, parameterised by BENCH_OPEN_LOANS.
+// Loans are due uniformly over the next loan period and every loan that falls due is borrowed
+// again, so the number of open loans stays put while a simulated clock sweeps one day a tick at a
+// time. Per-operation and per-fired-loan costs should stay flat from thousands to millions of loans;
+// only the number of loans falling due per tick grows. Give the JVM -Xmx4g for the largest size.
+public class LoanMonitorBenchmarks {
+    private static final long TICK_MILLIS = 1000;
+    private static final long LOAN_PERIOD_MILLIS = TimeUnit.DAYS.toMillis(14);
+    private static final long SWEEP_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int SPARE_IDS = 4096;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = BenchmarkRunner.fromEnvironment();
+        String[] spareBooks = new String[SPARE_IDS];
+        for (int i = 0; i < SPARE_IDS; i++) {
+            spareBooks[i] = "spare-b" + i;
+        }
+        for (int size : BenchmarkRunner.envSizes("BENCH_OPEN_LOANS", 10_000, 100_000, 1_000_000, 4_000_000)) {
+            Random random = new Random(11);
+            String[] userIds = new String[size];
+            String[] bookIds = new String[size];
+            for (int i = 0; i < size; i++) {
+                userIds[i] = "u" + i;
+                bookIds[i] = "b" + random.nextInt(Math.max(1, size / 4));
+            }
+
+            long heapBefore = usedHeap();
+            long[] clock = {System.currentTimeMillis()};
+            LoanMonitor[] holder = new LoanMonitor[1];
+            LoanMonitor monitor = new LoanMonitor(TICK_MILLIS, loan ->
+                    holder[0].track(loan.getUserId(), loan.getBookId(), clock[0] + LOAN_PERIOD_MILLIS));
+            holder[0] = monitor;
+            for (int i = 0; i < size; i++) {
+                monitor.track(userIds[i], bookIds[i], clock[0] + (long) (random.nextDouble() * LOAN_PERIOD_MILLIS));
+            }
+            System.out.printf("%d open loans, about %d heap bytes per loan%n", size,
+                    (usedHeap() - heapBefore) / size);
+
+            String params = "openLoans=" + size;
+            runner.run("borrow+return (track/untrack)", params, () -> {
+                String userId = userIds[random.nextInt(size)];
+                String bookId = spareBooks[random.nextInt(SPARE_IDS)];
+                monitor.track(userId, bookId, clock[0] + (long) (random.nextDouble() * LOAN_PERIOD_MILLIS));
+                return monitor.untrack(userId, bookId);
+            });
+            runner.run("renew (reschedule)", params, () -> {
+                int i = random.nextInt(size);
+                monitor.track(userIds[i], bookIds[i], clock[0] + (long) (random.nextDouble() * LOAN_PERIOD_MILLIS));
+                return i;
+            });
+
+            // Ticks don't fit the fixed-time runner: each one moves the clock, so sweep a day instead
+            long ticks = SWEEP_MILLIS / TICK_MILLIS;
+            long fired = 0;
+            long start = System.nanoTime();
+            for (long i = 0; i < ticks; i++) {
+                clock[0] += TICK_MILLIS;
+                fired += monitor.advance(clock[0]);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-32s %-28s %14.1f ns/tick  %d loans fell due, %.1f ns per loan%n",
+                    "advance (one day of ticks)", params, elapsed / (double) ticks, fired,
+                    fired == 0 ? 0 : elapsed / (double) fired);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import entities.Book;
+import services.LinearSearchEngine;
+import services.NGramSearchEngine;
+import services.SearchService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+// In-memory search paths over a synthetic catalog, parameterised by BENCH_CATALOG_SIZES
+public class SearchBenchmarks {
+    private static final String[] WORDS = {
+            "war", "peace", "crime", "punishment", "idiot", "brothers", "night", "garden", "river", "stone",
+            "shadow", "empire", "winter", "silent", "golden", "house", "city", "glass", "storm", "island"
+    };
+    private static final String[] GENRES = {"Fiction", "Sci-Fi", "Fantasy", "History", "Poetry", "Mystery"};
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = BenchmarkRunner.fromEnvironment();
+        for (int size : BenchmarkRunner.envSizes("BENCH_CATALOG_SIZES", 1_000, 10_000, 100_000)) {
+            List<Book> catalog = syntheticCatalog(size, 42);
+            Map<String, Book> byId = new HashMap<>();
+            catalog.forEach(book -> byId.put(book.getId(), book));
+            List<Function<Book, String>> fields = List.of(Book::getTitle, Book::getAuthor, Book::getGenre);
+
+            SearchService<Book> linear = new SearchService<>(new LinearSearchEngine<>(byId::values, fields));
+            NGramSearchEngine<Book> ngram = new NGramSearchEngine<>(Book::getId, fields);
+            catalog.forEach(ngram::add);
+            SearchService<Book> indexed = new SearchService<>(ngram);
+
+            String params = "catalog=" + size;
+            Random random = new Random(7);
+            runner.run("searchById (list scan)", params,
+                    () -> linear.searchById(catalog, "b" + random.nextInt(size), Book::getId));
+            runner.run("searchByName (list scan)", params,
+                    () -> linear.searchByName(catalog, "stone", Book::getTitle));
+            runner.run("search linear engine", params, () -> linear.search("golden riv"));
+            runner.run("search ngram engine", params, () -> indexed.search("golden riv"));
+            runner.run("search ngram prefix", params, () -> indexed.search("wi"));
+            runner.run("ngram index build", params, () -> {
+                NGramSearchEngine<Book> engine = new NGramSearchEngine<>(Book::getId, fields);
+                for (int i = 0; i < Math.min(size, 1_000); i++) engine.add(catalog.get(i));
+                return engine;
+            });
+        }
+    }
+
+    // Deterministic for a given seed so runs are comparable
+    public static List<Book> syntheticCatalog(int size, long seed) {
+        Random random = new Random(seed);
+        List<Book> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+                    + " " + WORDS[random.nextInt(WORDS.length)];
+            String author = "Author " + random.nextInt(Math.max(1, size / 10));
+            catalog.add(new Book("b" + i, title, author, GENRES[random.nextInt(GENRES.length)], 1 + random.nextInt(5)));
+        }
+        return catalog;
+    }
+}
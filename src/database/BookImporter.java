@@ -0,0 +1,180 @@
+package database;
+
+import entities.Book;
+import interfaces.LibraryStore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Streams a CSV/TSV catalog file (id, title, author, genre, availableCopies) into the store.
+// Rows go out in batches; every chunk of rows is one transaction, and the in-memory catalog is
+// only updated for chunks that committed. A failed chunk is rolled back and the import stops with
+// the line to resume from.
+public class BookImporter {
+    private final LibraryStore store;
+    private final int batchSize;
+    private final int chunkSize;
+    private final Predicate<String> alreadyExists;
+    private final Consumer<Book> onImported;
+
+    public static class Report {
+        public long imported;
+        public long rejected;
+        public long lastCommittedLine;
+        public long resumeFromLine; // 0 when the whole file went through
+        public long elapsedMillis;
+
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? imported : imported * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            String summary = String.format("Imported %d books, rejected %d rows in %.1fs (%.0f rows/sec).",
+                    imported, rejected, elapsedMillis / 1000.0, rowsPerSecond());
+            return resumeFromLine > 0
+                    ? summary + " Import stopped early; resume from line " + resumeFromLine + "."
+                    : summary;
+        }
+    }
+
+    public BookImporter(LibraryStore store, int batchSize, int chunkSize,
+                        Predicate<String> alreadyExists, Consumer<Book> onImported) {
+        if (batchSize < 1 || chunkSize < batchSize) {
+            throw new IllegalArgumentException("Invalid batch/chunk size: " + batchSize + "/" + chunkSize);
+        }
+        this.store = store;
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+        this.alreadyExists = alreadyExists;
+        this.onImported = onImported;
+    }
+
+    // Lines before startLine (1-based) are skipped, which is how an interrupted import is resumed.
+    // Rejected rows are written to rejectFile with their line number and the reason.
+    public Report importFile(Path file, long startLine, Path rejectFile, PrintStream progress)
+            throws IOException {
+        char delimiter = file.toString().toLowerCase().endsWith(".tsv") ? '\t' : ',';
+        Report report = new Report();
+        report.lastCommittedLine = startLine - 1;
+        long started = System.currentTimeMillis();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter rejects = startLine > 1
+                     ? Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8,
+                             StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                     : Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8)) {
+            List<Book> chunk = new ArrayList<>(chunkSize);
+            Set<String> chunkIds = new HashSet<>();
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber < startLine || line.isBlank() || (lineNumber == 1 && isHeader(line, delimiter))) {
+                    continue;
+                }
+                String problem;
+                Book book = null;
+                List<String> fields = split(line, delimiter);
+                problem = validate(fields);
+                if (problem == null) {
+                    book = new Book(fields.get(0).trim(), fields.get(1).trim(), fields.get(2).trim(),
+                            fields.get(3).trim(), Integer.parseInt(fields.get(4).trim()));
+                    if (alreadyExists.test(book.getId()) || !chunkIds.add(book.getId())) {
+                        problem = "duplicate id " + book.getId();
+                    }
+                }
+                if (problem != null) {
+                    report.rejected++;
+                    rejects.write(lineNumber + "\t" + problem + "\t" + line);
+                    rejects.newLine();
+                    continue;
+                }
+
+                chunk.add(book);
+                if (chunk.size() == chunkSize) {
+                    commitChunk(chunk, report, lineNumber, started, progress);
+                    chunkIds.clear();
+                }
+            }
+            commitChunk(chunk, report, lineNumber, started, progress);
+        } catch (SQLException e) {
+            // Everything after the last committed line was rolled back
+            report.resumeFromLine = report.lastCommittedLine + 1;
+            System.err.println("Error importing books: " + e.getMessage());
+        }
+        report.elapsedMillis = System.currentTimeMillis() - started;
+        return report;
+    }
+
+    private void commitChunk(List<Book> chunk, Report report, long lineNumber, long started,
+                             PrintStream progress) throws SQLException {
+        if (!chunk.isEmpty()) {
+            store.saveBooks(chunk, batchSize);
+            chunk.forEach(onImported);
+            report.imported += chunk.size();
+            chunk.clear();
+        }
+        report.lastCommittedLine = lineNumber;
+        long elapsed = Math.max(1, System.currentTimeMillis() - started);
+        progress.printf("Committed through line %d: %d books (%.0f rows/sec)%n",
+                lineNumber, report.imported, report.imported * 1000.0 / elapsed);
+    }
+
+    private static boolean isHeader(String line, char delimiter) {
+        return split(line, delimiter).get(0).trim().equalsIgnoreCase("id");
+    }
+
+    private static String validate(List<String> fields) {
+        if (fields.size() != 5) return "expected 5 fields, found " + fields.size();
+        String id = fields.get(0).trim();
+        if (id.isEmpty() || id.length() > 50) return "id must be 1-50 characters";
+        if (fields.get(1).isBlank() || fields.get(1).trim().length() > 100) return "title must be 1-100 characters";
+        if (fields.get(2).isBlank() || fields.get(2).trim().length() > 100) return "author must be 1-100 characters";
+        if (fields.get(3).isBlank() || fields.get(3).trim().length() > 50) return "genre must be 1-50 characters";
+        try {
+            if (Integer.parseInt(fields.get(4).trim()) < 0) return "availableCopies must not be negative";
+        } catch (NumberFormatException e) {
+            return "availableCopies is not a number";
+        }
+        return null;
+    }
+
+    // Single-line CSV with optional double quotes ("" escapes a quote); TSV fields are taken as-is
+    private static List<String> split(String line, char delimiter) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (delimiter == ',' && c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == delimiter && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
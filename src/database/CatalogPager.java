@@ -0,0 +1,40 @@
+package database;
+
+import entities.Book;
+import interfaces.LibraryStore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.List;
+
+// Keyset pagination over books ordered by id: each page is "id > last id seen", so page N costs
+// the same as page 1 and only one page is ever held in memory.
+public class CatalogPager {
+    private final LibraryStore store;
+    private final int pageSize;
+
+    public CatalogPager(LibraryStore store, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.store = store;
+        this.pageSize = pageSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    // Writes the page after the given cursor ("" for the first page) to the writer.
+    // Returns the cursor for the next page, or null when this was the last one.
+    public String writePage(String afterId, Writer writer) throws SQLException, IOException {
+        List<Book> page = store.listBooks(afterId, pageSize);
+        for (Book book : page) {
+            writer.write(book.toString());
+            writer.write(System.lineSeparator());
+        }
+        writer.flush();
+        return page.size() == pageSize ? page.get(page.size() - 1).getId() : null;
+    }
+}
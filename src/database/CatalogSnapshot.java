@@ -0,0 +1,128 @@
+package database;
+
+import entities.Book;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Compact binary image of books, users and loans, tagged with the database change marker it was
+// taken at. Layout: magic, version, marker, three length-prefixed sections, then a CRC32 of
+// everything before it. Reads memory-map the file and reject it on any mismatch.
+public class CatalogSnapshot {
+    private static final int MAGIC = 0x4C49425A; // "LIBZ"
+    private static final int VERSION = 3;
+
+    public final List<Book> books = new ArrayList<>();
+    public final List<String[]> users = new ArrayList<>(); // {id, name, role}
+    public final List<String[]> loans = new ArrayList<>(); // {userId, bookId, dueAtMillis}
+
+    public static void write(Path file, String marker, CatalogSnapshot snapshot) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream raw = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new CheckedOutputStream(raw, crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, marker);
+
+            out.writeInt(snapshot.books.size());
+            for (Book book : snapshot.books) {
+                writeString(out, book.getId());
+                writeString(out, book.getTitle());
+                writeString(out, book.getAuthor());
+                writeString(out, book.getGenre());
+                out.writeInt(book.getAvailableCopies());
+                out.writeLong(book.getVersion());
+            }
+            out.writeInt(snapshot.users.size());
+            for (String[] user : snapshot.users) {
+                writeString(out, user[0]);
+                writeString(out, user[1]);
+                writeString(out, user[2]);
+            }
+            out.writeInt(snapshot.loans.size());
+            for (String[] loan : snapshot.loans) {
+                writeString(out, loan[0]);
+                writeString(out, loan[1]);
+                out.writeLong(Long.parseLong(loan[2]));
+            }
+            out.flush();
+            // Trailer is written past the checksummed stream
+            raw.write(ByteBuffer.allocate(Long.BYTES).putLong(crc.getValue()).array());
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns null when the file is missing, corrupt, or was taken at a different marker
+    public static CatalogSnapshot read(Path file, String expectedMarker) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 3 * Integer.BYTES + Long.BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int bodyLength = (int) size - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(bodyLength));
+            if (crc.getValue() != buffer.getLong(bodyLength)) {
+                return null;
+            }
+            buffer.limit(bodyLength);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !readString(buffer).equals(expectedMarker)) {
+                return null;
+            }
+
+            CatalogSnapshot snapshot = new CatalogSnapshot();
+            int bookCount = buffer.getInt();
+            for (int i = 0; i < bookCount; i++) {
+                Book book = new Book(readString(buffer), readString(buffer), readString(buffer),
+                        readString(buffer), buffer.getInt());
+                book.setVersion(buffer.getLong());
+                snapshot.books.add(book);
+            }
+            int userCount = buffer.getInt();
+            for (int i = 0; i < userCount; i++) {
+                snapshot.users.add(new String[]{readString(buffer), readString(buffer), readString(buffer)});
+            }
+            int loanCount = buffer.getInt();
+            for (int i = 0; i < loanCount; i++) {
+                snapshot.loans.add(new String[]{readString(buffer), readString(buffer),
+                        Long.toString(buffer.getLong())});
+            }
+            return snapshot;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,226 @@
+package database;
+
+import enums.MutationType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Reader side of the change feed: polls library_changes for rows written by other instances and
+// hands each one to a listener exactly once. AUTO_INCREMENT values are handed out at insert time
+// but become visible at commit, so a lower seq can show up after a higher one; the tailer keeps a
+// watermark below which every row has been seen, re-checks the range above it for late rows, and
+// only gives up on a missing seq (rolled back, or skipped by the allocator) after gapTimeoutMillis.
+public class ChangeFeedTailer implements AutoCloseable {
+    private static final int BATCH = 500;
+    private static final long PRUNE_INTERVAL_MILLIS = 60_000;
+
+    public static class Change {
+        public final long sequence;
+        public final MutationType type;
+        public final String entityId;
+        public final String relatedId; // book id of a loan change
+
+        Change(long sequence, MutationType type, String entityId, String relatedId) {
+            this.sequence = sequence;
+            this.type = type;
+            this.entityId = entityId;
+            this.relatedId = relatedId;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " " + type + " " + entityId + (relatedId == null ? "" : " " + relatedId);
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final String origin;
+    private final Consumer<Change> listener;
+    private final long pollMillis;
+    private final long gapTimeoutMillis;
+    private final int retentionMinutes;
+
+    private final TreeSet<Long> seenAboveWatermark = new TreeSet<>();
+    private long watermark;
+    private long gapSince;
+    private long lastPrune;
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong skippedGaps = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private Thread worker;
+    private volatile boolean closed;
+
+    // Rows from origin are this instance's own and are skipped; retentionMinutes of 0 keeps every row
+    public ChangeFeedTailer(ConnectionPool pool, String origin, Consumer<Change> listener, long pollMillis,
+                            long gapTimeoutMillis, int retentionMinutes) {
+        this.pool = pool;
+        this.origin = origin;
+        this.listener = listener;
+        this.pollMillis = Math.max(1, pollMillis);
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.retentionMinutes = retentionMinutes;
+    }
+
+    // Call before loading data: everything logged after this point is replayed once tailing starts,
+    // so changes made while the load runs are not lost. The load may already have seen some of them,
+    // so the listener must not apply those as deltas; see latestSequence().
+    public synchronized long markStart() throws SQLException {
+        watermark = latestSequence();
+        return watermark;
+    }
+
+    // The newest committed change. Read once the load has finished, it bounds the changes the load
+    // might have seen: anything logged later committed after the load read its rows.
+    public long latestSequence() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT COALESCE(MAX(seq), 0) FROM library_changes");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    public synchronized void start() {
+        worker = new Thread(this::run, "change-feed");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public long getAppliedCount() {
+        return applied.get();
+    }
+
+    public long getSkippedGapCount() {
+        return skippedGaps.get();
+    }
+
+    // Age of the newest applied change when it was applied
+    public long getLagMillis() {
+        return lagMillis.get();
+    }
+
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Thread running = worker;
+        if (running != null) {
+            running.interrupt();
+            try {
+                running.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                poll();
+            } catch (SQLException e) {
+                System.err.println("Error reading change feed: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                if (closed) return;
+            }
+        }
+    }
+
+    synchronized void poll() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            // Late commits below rows already seen
+            if (!seenAboveWatermark.isEmpty()) {
+                fetch(connection, watermark, seenAboveWatermark.last());
+            }
+            long from = seenAboveWatermark.isEmpty() ? watermark : seenAboveWatermark.last();
+            int fetched;
+            do {
+                fetched = fetch(connection, from, Long.MAX_VALUE);
+                if (!seenAboveWatermark.isEmpty()) {
+                    from = Math.max(from, seenAboveWatermark.last());
+                }
+            } while (fetched == BATCH && !closed);
+            advanceWatermark();
+            prune(connection);
+        }
+    }
+
+    private int fetch(Connection connection, long after, long upTo) throws SQLException {
+        int rows = 0;
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT seq, origin, type, entity_id, related_id, "
+                        + "TIMESTAMPDIFF(MICROSECOND, changed_at, NOW(3)) AS age_us "
+                        + "FROM library_changes WHERE seq > ? AND seq <= ? ORDER BY seq LIMIT " + BATCH)) {
+            stmt.setLong(1, after);
+            stmt.setLong(2, upTo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    long sequence = rs.getLong("seq");
+                    if (sequence <= watermark || !seenAboveWatermark.add(sequence)) {
+                        continue;
+                    }
+                    if (origin.equals(rs.getString("origin"))) {
+                        continue;
+                    }
+                    Change change = new Change(sequence, MutationType.valueOf(rs.getString("type")),
+                            rs.getString("entity_id"), rs.getString("related_id"));
+                    try {
+                        listener.accept(change);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error applying change " + change + ": " + e.getMessage());
+                    }
+                    applied.incrementAndGet();
+                    lagMillis.set(rs.getLong("age_us") / 1000);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private void advanceWatermark() {
+        long before = watermark;
+        while (!seenAboveWatermark.isEmpty() && seenAboveWatermark.first() == watermark + 1) {
+            watermark = seenAboveWatermark.pollFirst();
+        }
+        if (seenAboveWatermark.isEmpty()) {
+            gapSince = 0;
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (gapSince == 0 || watermark != before) {
+            // A new gap, or the old one closed and this is the next
+            gapSince = now;
+        } else if (now - gapSince >= gapTimeoutMillis) {
+            // The missing seqs never committed; stop waiting for them
+            skippedGaps.incrementAndGet();
+            watermark = seenAboveWatermark.first() - 1;
+            gapSince = 0;
+            advanceWatermark();
+        }
+    }
+
+    private void prune(Connection connection) throws SQLException {
+        long now = System.currentTimeMillis();
+        if (retentionMinutes <= 0 || now - lastPrune < PRUNE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastPrune = now;
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "DELETE FROM library_changes WHERE changed_at < NOW(3) - INTERVAL ? MINUTE LIMIT 10000")) {
+            stmt.setInt(1, retentionMinutes);
+            stmt.executeUpdate();
+        }
+    }
+}
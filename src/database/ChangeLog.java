@@ -0,0 +1,63 @@
+package database;
+
+import enums.MutationType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Writer side of the change feed: one library_changes row per mutation, inserted on the same
+// connection and in the same transaction as the change itself, so a row is visible exactly when
+// the change is. Rows carry the id of the instance that wrote them so it can skip its own.
+public class ChangeLog {
+    private static final String INSERT_SQL =
+            "INSERT INTO library_changes (origin, type, entity_id, related_id) VALUES (?, ?, ?, ?)";
+
+    private final String origin;
+
+    public ChangeLog(String origin) {
+        this.origin = origin;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS library_changes (" +
+                "seq BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "origin VARCHAR(36) NOT NULL, " +
+                "type VARCHAR(20) NOT NULL, " +
+                "entity_id VARCHAR(50) NOT NULL, " +
+                "related_id VARCHAR(50), " +
+                "changed_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3), " +
+                "INDEX idx_library_changes_time (changed_at))");
+    }
+
+    // Books and users are logged by id; loans by user id with the book id as relatedId
+    void append(Connection connection, MutationType type, String entityId, String relatedId) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_SQL)) {
+            bind(stmt, type, entityId, relatedId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // For callers that batch their own inserts (bulk import)
+    PreparedStatement prepareBatch(Connection connection) throws SQLException {
+        return connection.prepareStatement(INSERT_SQL);
+    }
+
+    void addBatch(PreparedStatement stmt, MutationType type, String entityId, String relatedId) throws SQLException {
+        bind(stmt, type, entityId, relatedId);
+        stmt.addBatch();
+    }
+
+    private void bind(PreparedStatement stmt, MutationType type, String entityId, String relatedId)
+            throws SQLException {
+        stmt.setString(1, origin);
+        stmt.setString(2, type.name());
+        stmt.setString(3, entityId);
+        stmt.setString(4, relatedId);
+    }
+}
@@ -0,0 +1,354 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionPool implements AutoCloseable {
+    // Connections idle for less than this are handed out without a validation round-trip
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 5000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final boolean leakTraces;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> inUse = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // leakTraces records a stack trace on every acquire so a leak report can say where the
+    // connection was taken; without it leaks are still reported, just without the trace
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+                          boolean leakTraces, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.leakTraces = leakTraces;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                HOUSEKEEPING_INTERVAL_MILLIS, HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Opens the minimum number of connections up front so startup fails fast on a bad URL
+    public void start() throws SQLException {
+        while (totalConnections.get() < minSize) {
+            idle.offerLast(openConnection());
+        }
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                        + "ms waiting for a connection (max pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (validate(pooled)) break;
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = openConnection();
+            }
+            pooled.checkOut(leakThresholdMillis > 0 && leakTraces);
+            inUse.add(pooled);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getActiveCount() {
+        return inUse.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return totalConnections.get();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        return new PooledConnection(raw);
+    }
+
+    private boolean validate(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        pooled.statements.closeAll();
+        try {
+            pooled.raw.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        inUse.remove(pooled);
+        if (pooled.broken) {
+            discard(pooled);
+            permits.release();
+            return;
+        }
+        try {
+            // Never hand the next borrower a half-finished transaction
+            if (!pooled.raw.getAutoCommit()) {
+                pooled.raw.rollback();
+                pooled.raw.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            if (closed) {
+                discard(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // Evict connections idle for too long, oldest first, but keep the minimum around
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+
+        // Replace connections lost to eviction or failed validation
+        try {
+            while (!closed && totalConnections.get() < minSize) {
+                idle.offerLast(openConnection());
+            }
+        } catch (SQLException e) {
+            System.err.println("Error replenishing connection pool: " + e.getMessage());
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (PooledConnection pooled : inUse) {
+                if (!pooled.leakReported && now - pooled.checkedOutAt > leakThresholdMillis) {
+                    pooled.leakReported = true;
+                    System.err.println("Possible connection leak: connection held for "
+                            + (now - pooled.checkedOutAt) + "ms");
+                    if (pooled.checkoutSite != null) {
+                        pooled.checkoutSite.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    private class PooledConnection {
+        final Connection raw;
+        final StatementCache statements;
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long checkedOutAt;
+        volatile Exception checkoutSite;
+        volatile boolean leakReported;
+        volatile boolean broken;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new StatementCache(raw, statementCacheSize, statementCacheHits, statementCacheMisses);
+        }
+
+        void checkOut(boolean recordSite) {
+            checkedOutAt = System.currentTimeMillis();
+            checkoutSite = recordSite ? new Exception("Connection acquired here") : null;
+            leakReported = false;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    // Logical connection handed to callers; close() returns the physical connection to the pool
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!released) {
+                        released = true;
+                        release(pooled);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return released || pooled.raw.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + pooled.raw;
+                }
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                if (method.getName().equals("prepareStatement") && args.length == 1) {
+                    return guard(pooled, method.getReturnType(), pooled.statements.prepare((String) args[0]));
+                }
+                return guard(pooled, method.getReturnType(), method.invoke(pooled.raw, args));
+            } catch (InvocationTargetException | SQLException e) {
+                throw checkLink(pooled, e instanceof InvocationTargetException ? e.getCause() : e);
+            }
+        }
+    }
+
+    // Statements and result sets can be the first to notice a dead link, so they are wrapped too
+    private Object guard(PooledConnection pooled, Class<?> type, Object result) {
+        if (result == null || !(Statement.class.isAssignableFrom(type) || type == ResultSet.class)) {
+            return result;
+        }
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new Guard(pooled, result));
+    }
+
+    // SQLState class 08 means the link itself is gone; don't put it back in rotation
+    private static Throwable checkLink(PooledConnection pooled, Throwable cause) {
+        if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                && sqlException.getSQLState().startsWith("08")) {
+            pooled.broken = true;
+        }
+        return cause;
+    }
+
+    private class Guard implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Object target;
+
+        Guard(PooledConnection pooled, Object target) {
+            this.pooled = pooled;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return target.toString();
+                }
+            }
+            try {
+                return guard(pooled, method.getReturnType(), method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw checkLink(pooled, e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package database;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+// Maps keys to nodes by consistent hashing: every node is hashed onto a 64-bit ring at many
+// virtual points, and a key belongs to the first point at or after its own hash. Points are
+// derived from node names, not list positions, so reordering the nodes moves nothing and adding
+// a node to N moves only about 1/(N+1) of the keys, all of them to the new node.
+public class ConsistentHashRing {
+    private final long[] points;  // sorted
+    private final int[] owners;   // node index of each point
+
+    public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("Need at least one node and one virtual node per node");
+        }
+        if (new HashSet<>(nodes).size() != nodes.size()) {
+            throw new IllegalArgumentException("Node names must be unique: " + nodes);
+        }
+        int count = nodes.size() * virtualNodes;
+        long[][] entries = new long[count][];
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                entries[node * virtualNodes + v] = new long[]{hash(nodes.get(node) + "#" + v), node};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        points = new long[count];
+        owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    // Index into the node list the ring was built from
+    public int nodeFor(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    // String.hashCode is fixed by the language spec, so routing is the same on every JVM; the
+    // finalizer spreads neighbouring ids like "b1", "b2" across the whole ring
+    static long hash(String key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L + key.length();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE5AC1A53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,212 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Coalesces concurrent short transactions into one database transaction (one commit, one fsync).
+// Each operation runs under its own savepoint, so an operation that fails or declines is rolled
+// back alone; callers are only told "done" once the shared commit has succeeded. Whatever goes wrong
+// with one group is reported to that group's callers, and the worker carries on with the next.
+public class GroupCommitter implements AutoCloseable {
+    private static final int ER_LOCK_DEADLOCK = 1213;
+
+    public interface Operation {
+        // Return false to roll this operation back without failing it (e.g. "nothing to return")
+        boolean apply(Connection connection) throws SQLException;
+    }
+
+    private static class Pending {
+        final Operation operation;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        // Taken by the worker before it runs the operation, or by a caller that gave up waiting
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        Pending(Operation operation) {
+            this.operation = operation;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final long resultTimeoutMillis;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    // resultTimeoutMillis bounds how long execute() waits for its group to commit
+    public GroupCommitter(ConnectionPool pool, int maxBatch, long maxWaitMillis, long resultTimeoutMillis) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        }
+        this.pool = pool;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.resultTimeoutMillis = resultTimeoutMillis;
+        this.worker = new Thread(this::run, "group-commit");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public CompletableFuture<Boolean> submit(Operation operation) {
+        return enqueue(operation).result;
+    }
+
+    private Pending enqueue(Operation operation) {
+        Pending pending = new Pending(operation);
+        if (closed) {
+            pending.result.completeExceptionally(new SQLException("Group committer is closed"));
+        } else {
+            queue.add(pending);
+        }
+        return pending;
+    }
+
+    // Blocking convenience for callers that want the plain JDBC contract. An operation still queued
+    // when the timeout runs out is withdrawn, so a timeout means it was not applied; one the worker
+    // has already started gets a second timeout to finish its commit before the outcome is unknown.
+    public boolean execute(Operation operation) throws SQLException {
+        Pending pending = enqueue(operation);
+        try {
+            try {
+                return pending.result.get(resultTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (pending.claimed.compareAndSet(false, true)) {
+                    throw new SQLTimeoutException("Group commit did not start within " + resultTimeoutMillis
+                            + "ms; the operation was not applied");
+                }
+                return pending.result.get(resultTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            throw new SQLTimeoutException("Group commit did not finish within " + 2 * resultTimeoutMillis
+                    + "ms; the operation may still be committed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for group commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) throw sqlException;
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new SQLException("Group committer is closed"));
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = closed ? queue.poll() : queue.take();
+                if (first == null) break;
+                batch.add(first);
+                // Gather whatever else arrives within the window, up to the batch limit
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 && !closed
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // close() wakes us up; drain what's queued and exit
+                if (!closed) continue;
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    commit(batch);
+                } catch (Throwable t) {
+                    // Anything commit() didn't settle itself; never leave a caller waiting on it
+                    System.err.println("Error in group commit: " + t);
+                    for (Pending pending : batch) {
+                        pending.result.completeExceptionally(new SQLException("Group commit failed", t));
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        boolean[] applied = new boolean[batch.size()];
+        Exception[] failures = new Exception[batch.size()];
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    // Skip operations whose caller timed out and withdrew them
+                    if (!batch.get(i).claimed.compareAndSet(false, true)) {
+                        continue;
+                    }
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        applied[i] = batch.get(i).operation.apply(connection);
+                        if (!applied[i]) {
+                            connection.rollback(savepoint);
+                        }
+                    } catch (SQLException e) {
+                        if (e.getErrorCode() == ER_LOCK_DEADLOCK) {
+                            // InnoDB already rolled back the whole transaction; nothing in it survives
+                            throw e;
+                        }
+                        connection.rollback(savepoint);
+                        failures[i] = e;
+                    } catch (RuntimeException e) {
+                        // A bug in one operation fails that operation, not the group
+                        connection.rollback(savepoint);
+                        failures[i] = e;
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Error during rollback: " + ex.getMessage());
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Nothing in this group was committed
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (failures[i] != null) {
+                batch.get(i).result.completeExceptionally(failures[i]);
+            } else {
+                batch.get(i).result.complete(applied[i]);
+            }
+        }
+    }
+}
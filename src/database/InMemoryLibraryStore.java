@@ -0,0 +1,387 @@
+package database;
+
+import entities.Book;
+import entities.User;
+import enums.Role;
+import interfaces.LibraryStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Embedded backend: tables are plain concurrent maps, no server and no SQL. With a file, the whole
+// store is written out as a CatalogSnapshot every flush interval (when something changed) and on
+// close, and read back on startup; changes since the last flush are lost if the process dies.
+// Enforces the same rules as the MySQL schema: unique ids, loans need an existing user and book,
+// copies never go negative, deleting a book drops its loans.
+// Like row locks in the database, a loan or edit only locks its own book (the stored copy), under
+// the shared side of a read-write lock; deletes, batch imports and the flush's copy, which span
+// rows, take the exclusive side. So concurrent borrows of different books never wait on each other.
+public class InMemoryLibraryStore implements LibraryStore {
+    private static final String FILE_MARKER = "in-memory-store";
+
+    private final Path file;
+    private final long flushIntervalMillis;
+    private final NavigableMap<String, Book> books = new ConcurrentSkipListMap<>();
+    private final Map<String, String[]> users = new ConcurrentHashMap<>(); // id -> {name, role}
+    private final Map<String, Map<String, Long>> loansByUser = new ConcurrentHashMap<>(); // user -> book -> due
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flusher;
+    private final AtomicLong changes = new AtomicLong();
+    private long flushedChanges; // guarded by flushLock
+
+    // file may be null for a store that lives only as long as the process
+    public InMemoryLibraryStore(Path file, long flushIntervalMillis) {
+        this.file = file;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        if (file == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "store-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void load() throws SQLException {
+        if (Files.exists(file)) {
+            CatalogSnapshot snapshot;
+            try {
+                snapshot = CatalogSnapshot.read(file, FILE_MARKER);
+            } catch (IOException e) {
+                throw new SQLException("Cannot read store file " + file, e);
+            }
+            if (snapshot == null) {
+                // Refuse to start rather than overwrite it with an empty store
+                throw new SQLException("Store file " + file + " is corrupt or not a library store");
+            }
+            for (Book book : snapshot.books) {
+                books.put(book.getId(), book);
+            }
+            for (String[] user : snapshot.users) {
+                users.put(user[0], new String[]{user[1], user[2]});
+            }
+            for (String[] loan : snapshot.loans) {
+                loansByUser.computeIfAbsent(loan[0], k -> new ConcurrentHashMap<>())
+                        .put(loan[1], Long.parseLong(loan[2]));
+            }
+        }
+    }
+
+    @Override
+    public void saveBook(Book book) throws SQLException {
+        lock.readLock().lock();
+        try {
+            if (books.putIfAbsent(book.getId(), copy(book)) != null) {
+                throw new SQLException("Duplicate book id " + book.getId(), "23000");
+            }
+            changes.incrementAndGet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // All or nothing, like the database's batch transaction
+    @Override
+    public void saveBooks(List<Book> batch, int batchSize) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            for (Book book : batch) {
+                if (books.containsKey(book.getId())) {
+                    throw new SQLException("Duplicate book id " + book.getId(), "23000");
+                }
+            }
+            for (Book book : batch) {
+                books.put(book.getId(), copy(book));
+            }
+            changes.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateBook(Book book, long expectedVersion, int copiesDelta) {
+        lock.readLock().lock();
+        try {
+            Book stored = books.get(book.getId());
+            if (stored == null) {
+                return false;
+            }
+            synchronized (stored) {
+                if (stored.getVersion() != expectedVersion || !stored.tryAddCopies(copiesDelta)) {
+                    return false;
+                }
+                stored.setTitle(book.getTitle());
+                stored.setAuthor(book.getAuthor());
+                stored.setGenre(book.getGenre());
+                stored.setVersion(expectedVersion + 1);
+            }
+            changes.incrementAndGet();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteBook(String id) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (books.remove(id) != null) {
+                for (Map<String, Long> loans : loansByUser.values()) {
+                    loans.remove(id);
+                }
+                changes.incrementAndGet();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Book findBook(String id) {
+        Book book = books.get(id);
+        return book == null ? null : copy(book);
+    }
+
+    @Override
+    public void forEachBook(Consumer<Book> sink) {
+        for (Book book : books.values()) {
+            sink.accept(copy(book));
+        }
+    }
+
+    @Override
+    public List<Book> listBooks(String afterId, int limit) {
+        List<Book> page = new ArrayList<>(limit);
+        for (Book book : books.tailMap(afterId, false).values()) {
+            if (page.size() == limit) break;
+            page.add(copy(book));
+        }
+        return page;
+    }
+
+    @Override
+    public void saveUser(User user) throws SQLException {
+        lock.readLock().lock();
+        try {
+            if (users.putIfAbsent(user.getId(), new String[]{user.getName(), user.getRole().name()}) != null) {
+                throw new SQLException("Duplicate user id " + user.getId(), "23000");
+            }
+            changes.incrementAndGet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteUser(String id) {
+        lock.writeLock().lock();
+        try {
+            Map<String, Long> loans = loansByUser.get(id);
+            if ((loans != null && !loans.isEmpty()) || users.remove(id) == null) {
+                return false;
+            }
+            loansByUser.remove(id);
+            changes.incrementAndGet();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean findUser(String id, UserSink sink) {
+        String[] user = users.get(id);
+        if (user == null) {
+            return false;
+        }
+        sink.accept(id, user[0], Role.valueOf(user[1]));
+        return true;
+    }
+
+    @Override
+    public void forEachUser(UserSink sink) {
+        users.forEach((id, user) -> sink.accept(id, user[0], Role.valueOf(user[1])));
+    }
+
+    // The shared lock keeps the user and book from being deleted meanwhile; the book's own lock
+    // makes the loan and its copy one step
+    @Override
+    public boolean recordBorrow(String userId, String bookId, long dueAtMillis) {
+        lock.readLock().lock();
+        try {
+            Book book = books.get(bookId);
+            if (book == null || !users.containsKey(userId)) {
+                return false;
+            }
+            synchronized (book) {
+                if (book.getAvailableCopies() <= 0) {
+                    return false;
+                }
+                Map<String, Long> loans = loansByUser.computeIfAbsent(userId, k -> new ConcurrentHashMap<>());
+                if (loans.putIfAbsent(bookId, dueAtMillis) != null) {
+                    return false;
+                }
+                book.decreaseCopies();
+            }
+            changes.incrementAndGet();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean recordRenewal(String userId, String bookId, long dueAtMillis) {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> loans = loansByUser.get(userId);
+            if (loans == null || loans.replace(bookId, dueAtMillis) == null) {
+                return false;
+            }
+            changes.incrementAndGet();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean recordReturn(String userId, String bookId) {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> loans = loansByUser.get(userId);
+            // A loan always has its book: deleting the book drops the loan under the exclusive lock
+            Book book = books.get(bookId);
+            if (loans == null || book == null) {
+                return false;
+            }
+            synchronized (book) {
+                if (loans.remove(bookId) == null) {
+                    return false;
+                }
+                book.increaseCopies();
+            }
+            changes.incrementAndGet();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachLoan(LoanSink sink) {
+        loansByUser.forEach((userId, loans) -> loans.forEach((bookId, dueAt) -> sink.accept(userId, bookId, dueAt)));
+    }
+
+    @Override
+    public List<String[]> listLoans() {
+        List<String[]> rows = new ArrayList<>();
+        forEachLoan((userId, bookId, dueAt) -> {
+            String[] user = users.get(userId);
+            Book book = books.get(bookId);
+            if (user != null && book != null) {
+                rows.add(new String[]{userId, user[0], bookId, book.getTitle(), Long.toString(dueAt)});
+            }
+        });
+        rows.sort(Comparator.comparing(row -> row[1]));
+        return rows;
+    }
+
+    // The app's own snapshot is a MySQL optimization; this store already is one
+    @Override
+    public String changeMarker() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushQuietly();
+    }
+
+    // Copies the maps under the exclusive lock but writes the file outside it, so writers only wait
+    // for the copy
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            if (file == null) {
+                return;
+            }
+            CatalogSnapshot snapshot = new CatalogSnapshot();
+            long flushed;
+            lock.writeLock().lock();
+            try {
+                flushed = changes.get();
+                if (flushed == flushedChanges) {
+                    return;
+                }
+                for (Book book : books.values()) {
+                    snapshot.books.add(copy(book));
+                }
+                users.forEach((id, user) -> snapshot.users.add(new String[]{id, user[0], user[1]}));
+                forEachLoan((userId, bookId, dueAt) ->
+                        snapshot.loans.add(new String[]{userId, bookId, Long.toString(dueAt)}));
+            } finally {
+                lock.writeLock().unlock();
+            }
+            CatalogSnapshot.write(file, FILE_MARKER, snapshot);
+            flushedChanges = flushed;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Error writing store file: " + e.getMessage());
+        }
+    }
+
+    // Under the book's lock, so an edit is never copied half-done
+    private static Book copy(Book book) {
+        synchronized (book) {
+            return copyUnlocked(book);
+        }
+    }
+
+    private static Book copyUnlocked(Book book) {
+        Book copy = new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(), book.getAvailableCopies());
+        copy.setVersion(book.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,56 @@
+package database;
+
+import entities.Book;
+import interfaces.SearchEngine;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Substring search over title/author/genre run in the database, for when the catalog is not held
+// in memory. Matching follows the column collation (case-insensitive by default).
+public class JdbcBookSearchEngine implements SearchEngine<Book> {
+    private static final String SEARCH_SQL = "SELECT id, title, author, genre, availableCopies FROM books "
+            + "WHERE title LIKE ? OR author LIKE ? OR genre LIKE ? ORDER BY id LIMIT ?";
+
+    private final ConnectionPool pool;
+    private final int maxResults;
+
+    public JdbcBookSearchEngine(ConnectionPool pool, int maxResults) {
+        this.pool = pool;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public void add(Book item) {
+    }
+
+    @Override
+    public void remove(String id) {
+    }
+
+    @Override
+    public List<Book> search(String query) {
+        List<Book> results = new ArrayList<>();
+        String pattern = "%" + query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(SEARCH_SQL)) {
+            stmt.setString(1, pattern);
+            stmt.setString(2, pattern);
+            stmt.setString(3, pattern);
+            stmt.setInt(4, maxResults);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(new Book(rs.getString("id"), rs.getString("title"), rs.getString("author"),
+                            rs.getString("genre"), rs.getInt("availableCopies")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error searching catalog: " + e.getMessage());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,125 @@
+package database;
+
+import entities.Book;
+import interfaces.CatalogBrowser;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Catalog facets answered by the database (idx_books_genre / idx_books_author), for when the
+// catalog is not held in memory. Change notifications are ignored: the table is the index.
+// Matches are read in keyset pages (id > last id, LIMIT n); both indexes end in the primary key,
+// so a page is an index range read whatever the facets.
+public class JdbcCatalogBrowser implements CatalogBrowser {
+    private final ConnectionPool pool;
+
+    public JdbcCatalogBrowser(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void add(Book book) {
+    }
+
+    @Override
+    public void remove(String id) {
+    }
+
+    @Override
+    public void refreshAvailability(Book book) {
+    }
+
+    @Override
+    public List<String> genres() {
+        List<String> genres = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT DISTINCT genre FROM books ORDER BY genre");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                genres.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error browsing catalog: " + e.getMessage());
+        }
+        return genres;
+    }
+
+    @Override
+    public List<Book> find(String genre, String author, boolean availableOnly, String afterId, int limit) {
+        List<Book> results = new ArrayList<>();
+        List<String> params = new ArrayList<>();
+        List<String> conditions = conditions(genre, author, availableOnly, params);
+        conditions.add("id > ?");
+        params.add(afterId);
+        String sql = "SELECT id, title, author, genre, availableCopies FROM books WHERE "
+                + String.join(" AND ", conditions) + " ORDER BY id LIMIT ?";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            bind(stmt, params);
+            stmt.setInt(params.size() + 1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(new Book(rs.getString("id"), rs.getString("title"), rs.getString("author"),
+                            rs.getString("genre"), rs.getInt("availableCopies")));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error browsing catalog: " + e.getMessage());
+        }
+        return results;
+    }
+
+    @Override
+    public Map<String, Integer> countByGenre(String author, boolean availableOnly) {
+        Map<String, Integer> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> params = new ArrayList<>();
+        String sql = "SELECT genre, COUNT(*) FROM books" + where(null, author, availableOnly, params)
+                + " GROUP BY genre";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.merge(rs.getString(1), rs.getInt(2), Integer::sum);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error browsing catalog: " + e.getMessage());
+        }
+        return counts;
+    }
+
+    // Only a handful of shapes exist, so the statement cache still gets reuse
+    private static String where(String genre, String author, boolean availableOnly, List<String> params) {
+        List<String> conditions = conditions(genre, author, availableOnly, params);
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private static List<String> conditions(String genre, String author, boolean availableOnly, List<String> params) {
+        List<String> conditions = new ArrayList<>();
+        if (genre != null) {
+            conditions.add("genre = ?");
+            params.add(genre.trim());
+        }
+        if (author != null) {
+            conditions.add("author = ?");
+            params.add(author.trim());
+        }
+        if (availableOnly) {
+            conditions.add("availableCopies > 0");
+        }
+        return conditions;
+    }
+
+    private static void bind(PreparedStatement stmt, List<String> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setString(i + 1, params.get(i));
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package database;
+
+import entities.Book;
+import entities.User;
+import enums.MutationType;
+import enums.Role;
+import interfaces.LibraryStore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// MySQL backend: the books, users and userbook tables behind the shared connection pool.
+// Loan changes go through the group committer when one is configured. With a change log, every
+// write also records a library_changes row in the same transaction.
+public class JdbcLibraryStore implements LibraryStore {
+    // Rows per round trip when streaming whole tables at startup
+    private static final int FETCH_SIZE = 1000;
+    private static final String INSERT_BOOK_SQL =
+            "INSERT INTO books (id, title, author, genre, availableCopies) VALUES (?, ?, ?, ?, ?)";
+    private static final String BOOK_COLUMNS = "id, title, author, genre, availableCopies, version";
+
+    private interface Write {
+        void run(Connection connection) throws SQLException;
+    }
+
+    private final ConnectionPool pool;
+    private final ChangeLog changeLog;
+    private final boolean countWrites;
+    private final JdbcLoanPersistence loans;
+
+    // groupCommitter and changeLog may be null. countWrites makes every write move the write
+    // counter behind changeMarker(); only a snapshot needs it, and it costs each write a row lock.
+    public JdbcLibraryStore(ConnectionPool pool, GroupCommitter groupCommitter, ChangeLog changeLog,
+                            boolean countWrites) {
+        this.pool = pool;
+        this.changeLog = changeLog;
+        this.countWrites = countWrites;
+        this.loans = new JdbcLoanPersistence(pool, groupCommitter, changeLog, countWrites);
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement stmt = connection.createStatement()) {
+            // Create books table if not exists
+            stmt.execute("CREATE TABLE IF NOT EXISTS books (" +
+                    "id VARCHAR(50) PRIMARY KEY, " +
+                    "title VARCHAR(100) NOT NULL, " +
+                    "author VARCHAR(100) NOT NULL, " +
+                    "genre VARCHAR(50) NOT NULL, " +
+                    "availableCopies INT NOT NULL, " +
+                    "version BIGINT NOT NULL DEFAULT 0)");
+
+            // Create users table if not exists
+            stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
+                    "id VARCHAR(50) PRIMARY KEY, " +
+                    "name VARCHAR(100) NOT NULL, " +
+                    "role ENUM('ADMIN', 'REGULAR') NOT NULL)");
+
+            // Tables created before edits were versioned lack the column
+            addColumnIfMissing(stmt, "ALTER TABLE books ADD COLUMN version BIGINT NOT NULL DEFAULT 0");
+
+            // Create userbook table for tracking borrowed books
+            stmt.execute("CREATE TABLE IF NOT EXISTS userbook (" +
+                    "user_id VARCHAR(50) NOT NULL, " +
+                    "book_id VARCHAR(50) NOT NULL, " +
+                    "borrowed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "due_at TIMESTAMP NULL, " +
+                    "PRIMARY KEY (user_id, book_id), " +
+                    "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE, " +
+                    "FOREIGN KEY (book_id) REFERENCES books(id) ON DELETE CASCADE)");
+
+            // Loans taken before due dates were kept have none (due_at NULL)
+            addColumnIfMissing(stmt,
+                    "ALTER TABLE userbook ADD COLUMN borrowed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP");
+            addColumnIfMissing(stmt, "ALTER TABLE userbook ADD COLUMN due_at TIMESTAMP NULL");
+
+            // Secondary indexes for genre/author lookups and book -> borrower joins
+            createIndexIfMissing(stmt, "CREATE INDEX idx_books_genre ON books (genre)");
+            createIndexIfMissing(stmt, "CREATE INDEX idx_books_author ON books (author)");
+            createIndexIfMissing(stmt, "CREATE INDEX idx_userbook_book ON userbook (book_id)");
+
+            WriteCounter.createTable(stmt);
+            if (!countWrites) {
+                // This run's writes won't be counted, so no snapshot taken before it may be trusted
+                WriteCounter.bump(connection);
+            }
+            if (changeLog != null) {
+                ChangeLog.createTable(stmt);
+            }
+        }
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS; an existing index reports ER_DUP_KEYNAME (1061)
+    private static void createIndexIfMissing(Statement stmt, String sql) throws SQLException {
+        try {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            if (e.getErrorCode() != 1061) {
+                throw e;
+            }
+        }
+    }
+
+    // Likewise for columns: an existing one reports ER_DUP_FIELDNAME (1060)
+    private static void addColumnIfMissing(Statement stmt, String sql) throws SQLException {
+        try {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            if (e.getErrorCode() != 1060) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void saveBook(Book book) throws SQLException {
+        write(MutationType.SAVE_BOOK, book.getId(), connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(INSERT_BOOK_SQL)) {
+                bindBook(stmt, book);
+                stmt.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void saveBooks(List<Book> books, int batchSize) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement insert = connection.prepareStatement(INSERT_BOOK_SQL);
+             PreparedStatement log = changeLog == null ? null : changeLog.prepareBatch(connection)) {
+            connection.setAutoCommit(false);
+            try {
+                if (countWrites) {
+                    WriteCounter.bump(connection);
+                }
+                int pending = 0;
+                for (Book book : books) {
+                    bindBook(insert, book);
+                    insert.addBatch();
+                    if (log != null) {
+                        changeLog.addBatch(log, MutationType.SAVE_BOOK, book.getId(), null);
+                    }
+                    if (++pending == batchSize) {
+                        executeBatches(insert, log);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    executeBatches(insert, log);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void executeBatches(PreparedStatement insert, PreparedStatement log) throws SQLException {
+        insert.executeBatch();
+        if (log != null) {
+            log.executeBatch();
+        }
+    }
+
+    private static void bindBook(PreparedStatement stmt, Book book) throws SQLException {
+        stmt.setString(1, book.getId());
+        stmt.setString(2, book.getTitle());
+        stmt.setString(3, book.getAuthor());
+        stmt.setString(4, book.getGenre());
+        stmt.setInt(5, book.getAvailableCopies());
+    }
+
+    @Override
+    public boolean updateBook(Book book, long expectedVersion, int copiesDelta) throws SQLException {
+        boolean[] updated = new boolean[1];
+        write(MutationType.UPDATE_BOOK, book.getId(), connection -> {
+            // Copies move relative to the row, so loans committed meanwhile are kept
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "UPDATE books SET title=?, author=?, genre=?, availableCopies = availableCopies + ?, "
+                            + "version = version + 1 WHERE id=? AND version=? AND availableCopies + ? >= 0")) {
+                stmt.setString(1, book.getTitle());
+                stmt.setString(2, book.getAuthor());
+                stmt.setString(3, book.getGenre());
+                stmt.setInt(4, copiesDelta);
+                stmt.setString(5, book.getId());
+                stmt.setLong(6, expectedVersion);
+                stmt.setInt(7, copiesDelta);
+                updated[0] = stmt.executeUpdate() > 0;
+            }
+        });
+        return updated[0];
+    }
+
+    @Override
+    public void deleteBook(String id) throws SQLException {
+        write(MutationType.DELETE_BOOK, id, connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM books WHERE id=?")) {
+                stmt.setString(1, id);
+                stmt.executeUpdate();
+            }
+        });
+    }
+
+    // Runs a single-row write, in one transaction with the write counter bump and the change log row
+    // when there are any
+    private void write(MutationType type, String entityId, Write work) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            if (!countWrites && changeLog == null) {
+                work.run(connection);
+                return;
+            }
+            connection.setAutoCommit(false);
+            try {
+                if (countWrites) {
+                    WriteCounter.bump(connection);
+                }
+                work.run(connection);
+                if (changeLog != null) {
+                    changeLog.append(connection, type, entityId, null);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public Book findBook(String id) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT " + BOOK_COLUMNS + " FROM books WHERE id = ?")) {
+            stmt.setString(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? readBook(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public void forEachBook(Consumer<Book> sink) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT " + BOOK_COLUMNS + " FROM books")) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(readBook(rs));
+                }
+            }
+        }
+    }
+
+    // Keyset pagination: page N costs the same as page 1
+    @Override
+    public List<Book> listBooks(String afterId, int limit) throws SQLException {
+        List<Book> page = new ArrayList<>(limit);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT " + BOOK_COLUMNS + " FROM books WHERE id > ? ORDER BY id LIMIT ?")) {
+            stmt.setString(1, afterId);
+            stmt.setInt(2, limit);
+            stmt.setFetchSize(limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(readBook(rs));
+                }
+            }
+        }
+        return page;
+    }
+
+    private static Book readBook(ResultSet rs) throws SQLException {
+        Book book = new Book(
+                rs.getString("id"),
+                rs.getString("title"),
+                rs.getString("author"),
+                rs.getString("genre"),
+                rs.getInt("availableCopies"));
+        book.setVersion(rs.getLong("version"));
+        return book;
+    }
+
+    @Override
+    public void saveUser(User user) throws SQLException {
+        write(MutationType.SAVE_USER, user.getId(), connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO users VALUES (?, ?, ?)")) {
+                stmt.setString(1, user.getId());
+                stmt.setString(2, user.getName());
+                stmt.setString(3, user.getRole().name());
+                stmt.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public boolean deleteUser(String id) throws SQLException {
+        boolean[] deleted = new boolean[1];
+        write(MutationType.DELETE_USER, id, connection -> {
+            // The loan check is part of the delete, so a borrow can't slip in between
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "DELETE FROM users WHERE id = ? AND NOT EXISTS (SELECT 1 FROM userbook WHERE user_id = ?)")) {
+                stmt.setString(1, id);
+                stmt.setString(2, id);
+                deleted[0] = stmt.executeUpdate() > 0;
+            }
+        });
+        return deleted[0];
+    }
+
+    @Override
+    public boolean findUser(String id, UserSink sink) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT id, name, role FROM users WHERE id = ?")) {
+            stmt.setString(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                sink.accept(rs.getString("id"), rs.getString("name"), Role.valueOf(rs.getString("role")));
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void forEachUser(UserSink sink) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT id, name, role FROM users")) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(rs.getString("id"), rs.getString("name"), Role.valueOf(rs.getString("role")));
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean recordBorrow(String userId, String bookId, long dueAtMillis) {
+        return loans.recordBorrow(userId, bookId, dueAtMillis);
+    }
+
+    @Override
+    public boolean recordRenewal(String userId, String bookId, long dueAtMillis) {
+        return loans.recordRenewal(userId, bookId, dueAtMillis);
+    }
+
+    @Override
+    public boolean recordReturn(String userId, String bookId) {
+        return loans.recordReturn(userId, bookId);
+    }
+
+    @Override
+    public void forEachLoan(LoanSink sink) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("SELECT user_id, book_id, due_at FROM userbook")) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(rs.getString("user_id"), rs.getString("book_id"), dueAtMillis(rs));
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<String[]> listLoans() throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT u.id as user_id, u.name as user_name, b.id as book_id, b.title as book_title, " +
+                             "ub.due_at " +
+                             "FROM userbook ub " +
+                             "JOIN users u ON ub.user_id = u.id " +
+                             "JOIN books b ON ub.book_id = b.id " +
+                             "ORDER BY u.name");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new String[]{rs.getString("user_id"), rs.getString("user_name"),
+                        rs.getString("book_id"), rs.getString("book_title"), Long.toString(dueAtMillis(rs))});
+            }
+        }
+        return rows;
+    }
+
+    private static long dueAtMillis(ResultSet rs) throws SQLException {
+        Timestamp dueAt = rs.getTimestamp("due_at");
+        return dueAt == null ? 0 : dueAt.getTime();
+    }
+
+    // The write counter, which every write through this store (or its journal) moves when writes are
+    // counted, and which a store that doesn't count moves once as it starts; a constant read, however
+    // large the tables are. Edits made outside the app don't move it.
+    @Override
+    public String changeMarker() {
+        try (Connection connection = pool.getConnection()) {
+            return "writes=" + WriteCounter.read(connection);
+        } catch (SQLException e) {
+            System.err.println("Error reading database change marker: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,163 @@
+package database;
+
+import enums.MutationType;
+import interfaces.LoanPersistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+// Writes loan changes to the userbook/books tables through the shared pool (and the group
+// committer when one is configured). Each change is a single transaction, which also carries its
+// change log row when there is a log.
+public class JdbcLoanPersistence implements LoanPersistence {
+    private final ConnectionPool pool;
+    private final GroupCommitter groupCommitter;
+    private final ChangeLog changeLog;
+    private final boolean countWrites;
+
+    // groupCommitter and changeLog may be null; countWrites as for JdbcLibraryStore
+    public JdbcLoanPersistence(ConnectionPool pool, GroupCommitter groupCommitter, ChangeLog changeLog,
+                               boolean countWrites) {
+        this.pool = pool;
+        this.groupCommitter = groupCommitter;
+        this.changeLog = changeLog;
+        this.countWrites = countWrites;
+    }
+
+    @Override
+    public boolean recordBorrow(String userId, String bookId, long dueAtMillis) {
+        try {
+            return runLoanTransaction(connection -> insertLoan(connection, userId, bookId, dueAtMillis));
+        } catch (SQLException e) {
+            System.err.println("Error borrowing book: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean recordRenewal(String userId, String bookId, long dueAtMillis) {
+        try {
+            return runLoanTransaction(connection -> renewLoan(connection, userId, bookId, dueAtMillis));
+        } catch (SQLException e) {
+            System.err.println("Error renewing book: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean recordReturn(String userId, String bookId) {
+        try {
+            return runLoanTransaction(connection -> deleteLoan(connection, userId, bookId));
+        } catch (SQLException e) {
+            System.err.println("Error returning book: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Runs one loan change atomically: coalesced with concurrent ones when group commit is on,
+    // otherwise in a transaction of its own. A false result means nothing was changed.
+    private boolean runLoanTransaction(GroupCommitter.Operation change) throws SQLException {
+        GroupCommitter.Operation operation = countWrites ? connection -> {
+            WriteCounter.bump(connection);
+            return change.apply(connection);
+        } : change;
+        if (groupCommitter != null) {
+            return groupCommitter.execute(operation);
+        }
+        try (Connection connection = pool.getConnection()) {
+            // Start transaction
+            connection.setAutoCommit(false);
+            try {
+                boolean applied = operation.apply(connection);
+                if (applied) {
+                    // Commit transaction
+                    connection.commit();
+                } else {
+                    rollback(connection);
+                }
+                return applied;
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private boolean insertLoan(Connection connection, String userId, String bookId, long dueAtMillis)
+            throws SQLException {
+        // Insert into userbook table; borrowed_at defaults to now
+        try (PreparedStatement insertStmt = connection.prepareStatement(
+                "INSERT INTO userbook (user_id, book_id, due_at) VALUES (?, ?, ?)")) {
+            insertStmt.setString(1, userId);
+            insertStmt.setString(2, bookId);
+            insertStmt.setTimestamp(3, new Timestamp(dueAtMillis));
+            insertStmt.executeUpdate();
+        }
+
+        // Update available copies; the guard keeps the database from ever going negative
+        try (PreparedStatement updateStmt = connection.prepareStatement(
+                "UPDATE books SET availableCopies = availableCopies - 1 WHERE id = ? AND availableCopies > 0")) {
+            updateStmt.setString(1, bookId);
+            if (updateStmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+        if (changeLog != null) {
+            changeLog.append(connection, MutationType.BORROW, userId, bookId);
+        }
+        return true;
+    }
+
+    private boolean renewLoan(Connection connection, String userId, String bookId, long dueAtMillis)
+            throws SQLException {
+        try (PreparedStatement updateStmt = connection.prepareStatement(
+                "UPDATE userbook SET due_at = ? WHERE user_id = ? AND book_id = ?")) {
+            updateStmt.setTimestamp(1, new Timestamp(dueAtMillis));
+            updateStmt.setString(2, userId);
+            updateStmt.setString(3, bookId);
+            if (updateStmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+        if (changeLog != null) {
+            changeLog.append(connection, MutationType.RENEW, userId, bookId);
+        }
+        return true;
+    }
+
+    private boolean deleteLoan(Connection connection, String userId, String bookId) throws SQLException {
+        // Delete from userbook table; no row means the user hasn't borrowed this book
+        // (checked in the same statement so two concurrent returns can't both succeed)
+        try (PreparedStatement deleteStmt = connection.prepareStatement(
+                "DELETE FROM userbook WHERE user_id = ? AND book_id = ?")) {
+            deleteStmt.setString(1, userId);
+            deleteStmt.setString(2, bookId);
+            if (deleteStmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+
+        // Update available copies
+        try (PreparedStatement updateStmt = connection.prepareStatement(
+                "UPDATE books SET availableCopies = availableCopies + 1 WHERE id = ?")) {
+            updateStmt.setString(1, bookId);
+            updateStmt.executeUpdate();
+        }
+        if (changeLog != null) {
+            changeLog.append(connection, MutationType.RETURN, userId, bookId);
+        }
+        return true;
+    }
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            System.err.println("Error during rollback: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package database;
+
+import enums.MutationType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+// Writes journaled mutations to the library tables. Each record is applied once: the journal moves
+// its database checkpoint in the same transaction and skips what that already covers. New books and
+// users are plain inserts and edits are version-gated, as without the journal, so a record the
+// tables don't agree with fails and is discarded (and reported) rather than overwriting a row.
+// Loan changes only move copy counts, and are only written to the change log, when the loan row
+// actually changed.
+public class JdbcMutationApplier implements MutationJournal.Applier {
+    private final ChangeLog changeLog;
+    private final boolean countWrites;
+
+    // changeLog may be null; countWrites as for JdbcLibraryStore
+    public JdbcMutationApplier(ChangeLog changeLog, boolean countWrites) {
+        this.changeLog = changeLog;
+        this.countWrites = countWrites;
+    }
+
+    @Override
+    public void apply(Connection connection, MutationJournal.Mutation mutation) throws SQLException {
+        List<String> f = mutation.fields;
+        boolean changed = true;
+        if (countWrites) {
+            WriteCounter.bump(connection);
+        }
+        switch (mutation.type) {
+            case SAVE_BOOK -> update(connection,
+                    "INSERT INTO books (id, title, author, genre, availableCopies) VALUES (?, ?, ?, ?, ?)",
+                    f.get(0), f.get(1), f.get(2), f.get(3), Integer.parseInt(f.get(4)));
+            // Only found in journals written before edits were journaled as EDIT_BOOK
+            case UPDATE_BOOK -> update(connection,
+                    "INSERT INTO books (id, title, author, genre, availableCopies) VALUES (?, ?, ?, ?, ?) "
+                            + "ON DUPLICATE KEY UPDATE title = VALUES(title), author = VALUES(author), "
+                            + "genre = VALUES(genre), availableCopies = VALUES(availableCopies)",
+                    f.get(0), f.get(1), f.get(2), f.get(3), Integer.parseInt(f.get(4)));
+            case EDIT_BOOK -> {
+                if (update(connection,
+                        "UPDATE books SET title = ?, author = ?, genre = ?, availableCopies = availableCopies + ?, "
+                                + "version = version + 1 WHERE id = ? AND version = ? AND availableCopies + ? >= 0",
+                        f.get(1), f.get(2), f.get(3), Integer.parseInt(f.get(4)), f.get(0), Long.parseLong(f.get(5)),
+                        Integer.parseInt(f.get(4))) == 0) {
+                    // Memory already shows the edit, so this must not pass as applied
+                    throw new SQLException("Book " + f.get(0) + " is gone, not at version " + f.get(5)
+                            + ", or short of copies", "HY000");
+                }
+            }
+            case DELETE_BOOK -> update(connection, "DELETE FROM books WHERE id = ?", f.get(0));
+            case SAVE_USER -> update(connection, "INSERT INTO users (id, name, role) VALUES (?, ?, ?)",
+                    f.get(0), f.get(1), f.get(2));
+            // Entries journaled before due dates were kept have no third field
+            case BORROW -> {
+                changed = update(connection,
+                        "INSERT IGNORE INTO userbook (user_id, book_id, due_at) VALUES (?, ?, ?)",
+                        f.get(0), f.get(1), dueAt(f)) > 0;
+                if (changed) {
+                    update(connection, "UPDATE books SET availableCopies = availableCopies - 1 "
+                            + "WHERE id = ? AND availableCopies > 0", f.get(1));
+                }
+            }
+            case RENEW -> changed = update(connection,
+                    "UPDATE userbook SET due_at = ? WHERE user_id = ? AND book_id = ?",
+                    dueAt(f), f.get(0), f.get(1)) > 0;
+            case RETURN -> {
+                changed = update(connection, "DELETE FROM userbook WHERE user_id = ? AND book_id = ?",
+                        f.get(0), f.get(1)) > 0;
+                if (changed) {
+                    update(connection, "UPDATE books SET availableCopies = availableCopies + 1 WHERE id = ?",
+                            f.get(1));
+                }
+            }
+        }
+        if (changeLog != null && changed) {
+            boolean loan = mutation.type == MutationType.BORROW || mutation.type == MutationType.RETURN
+                    || mutation.type == MutationType.RENEW;
+            MutationType logged = mutation.type == MutationType.EDIT_BOOK ? MutationType.UPDATE_BOOK : mutation.type;
+            changeLog.append(connection, logged, f.get(0), loan ? f.get(1) : null);
+        }
+    }
+
+    private static Timestamp dueAt(List<String> fields) {
+        return fields.size() > 2 ? new Timestamp(Long.parseLong(fields.get(2))) : null;
+    }
+
+    private static int update(Connection connection, String sql, Object... params) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            return stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package database;
+
+import enums.MutationType;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Write-ahead journal for library mutations. A mutation is acknowledged once its record is on disk
+// (concurrent appenders share one fsync); a background applier then writes records to the database
+// in order, in small transactions, retrying through outages. The sequence number of the last
+// applied record is kept in a checkpoint file, so a restart replays exactly what is left. It is
+// also written to the journal_checkpoint table in the same transaction as each batch, and records
+// at or below it are skipped, so a crash between the commit and the file update can't apply a
+// batch twice (replaying an absolute copy count over later loans would oversell the book). The
+// checkpoint file names the journal, which keys its row.
+// Record layout: length, CRC32 of the body, then the body (sequence, type, field count, fields).
+public class MutationJournal implements AutoCloseable {
+    private static final long COMPACT_BYTES = 4 << 20;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+    public static class Mutation {
+        public final long sequence;
+        public final MutationType type;
+        public final List<String> fields;
+
+        Mutation(long sequence, MutationType type, List<String> fields) {
+            this.sequence = sequence;
+            this.type = type;
+            this.fields = fields;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " " + type + " " + fields;
+        }
+    }
+
+    public interface Applier {
+        // Runs inside the batch transaction, which also moves the database checkpoint past the record
+        void apply(Connection connection, Mutation mutation) throws SQLException;
+    }
+
+    private final Path file;
+    private final Path checkpointFile;
+    private final ConnectionPool pool;
+    private final Applier applier;
+    private final int maxBatch;
+    private final Consumer<Mutation> onDiscarded;
+    private final BlockingQueue<Mutation> pending = new LinkedBlockingQueue<>();
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+    private Thread worker;
+    private String journalId;
+    private volatile boolean checkpointTableReady;
+    private long nextSequence = 1;          // guarded by this
+    private volatile long writtenSequence;  // last record handed to the channel
+    private volatile long durableSequence;  // last record known to be on disk
+    private volatile long appliedSequence;  // last record written to the database
+    private volatile boolean closed;
+
+    // onDiscarded hears about records the database rejected outright (e.g. a constraint violation)
+    public MutationJournal(Path file, ConnectionPool pool, Applier applier, int maxBatch,
+                           Consumer<Mutation> onDiscarded) {
+        this.file = file;
+        this.checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        this.pool = pool;
+        this.applier = applier;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.onDiscarded = onDiscarded;
+    }
+
+    // Replays whatever the last run left unapplied, then starts the background applier.
+    // Returns the number of records replayed now; any the database refused stay pending.
+    public int open() throws IOException {
+        appliedSequence = readCheckpoint();
+        // Before anything is applied, so the id the database checkpoint is kept under survives a crash
+        writeCheckpoint(appliedSequence);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        List<Mutation> unapplied = recover();
+        long last = Math.max(appliedSequence, unapplied.isEmpty() ? 0 : unapplied.get(unapplied.size() - 1).sequence);
+        nextSequence = last + 1;
+        writtenSequence = last;
+        durableSequence = last;
+
+        int replayed = 0;
+        boolean reachable = true;
+        for (Mutation mutation : unapplied) {
+            if (reachable && appliedSequence < mutation.sequence) {
+                applyWithRetry(List.of(mutation), 3);
+            }
+            if (appliedSequence < mutation.sequence) {
+                reachable = false;
+                // Database still unreachable; the background applier takes over from here, in order
+                pending.add(mutation);
+            } else {
+                replayed++;
+            }
+        }
+        compactIfIdle();
+
+        Metrics.gauge("journal.pending", () -> writtenSequence - appliedSequence);
+        worker = new Thread(this::run, "journal-applier");
+        worker.setDaemon(true);
+        worker.start();
+        return replayed;
+    }
+
+    // Durable on return; false if the record could not be written (the change must not be acknowledged)
+    public boolean record(MutationType type, String... fields) {
+        long start = System.nanoTime();
+        try {
+            long sequence = append(type, List.of(fields));
+            sync(sequence);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+            return false;
+        } finally {
+            Metrics.recordSince("journal.append", start);
+        }
+    }
+
+    public long getPendingCount() {
+        return writtenSequence - appliedSequence;
+    }
+
+    // Gives the applier up to timeoutMillis to drain; anything left is replayed on the next start
+    public void close(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        closed = true;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(MAX_RETRY_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                writeCheckpoint(appliedSequence);
+                channel.force(true);
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        close(10000);
+    }
+
+    private synchronized long append(MutationType type, List<String> fields) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        long sequence = nextSequence;
+        ByteBuffer record = encode(sequence, type, fields);
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        nextSequence++;
+        writtenSequence = sequence;
+        // Queued in sequence order because we still hold the append lock
+        pending.add(new Mutation(sequence, type, fields));
+        return sequence;
+    }
+
+    // Group fsync: whoever gets the lock forces everything written so far, covering the waiters behind it
+    private void sync(long sequence) throws IOException {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            long target = writtenSequence;
+            long start = System.nanoTime();
+            channel.force(false);
+            Metrics.recordSince("journal.fsync", start);
+            durableSequence = target;
+        }
+    }
+
+    private void run() {
+        List<Mutation> batch = new ArrayList<>(maxBatch);
+        while (!closed || !pending.isEmpty()) {
+            try {
+                Mutation first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    compactIfIdle();
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, maxBatch - 1);
+                applyWithRetry(batch, Integer.MAX_VALUE);
+                batch.clear();
+            } catch (InterruptedException e) {
+                if (closed) break;
+            } catch (IOException e) {
+                System.err.println("Error writing journal checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    // Transient failures (no connection, lost connection, deadlock) are retried with backoff, at most
+    // maxAttempts times; a batch the database rejects is split so only the bad record is discarded
+    private void applyWithRetry(List<Mutation> batch, int maxAttempts) throws IOException {
+        long delay = 100;
+        for (int attempt = 1; ; attempt++) {
+            SQLException failure = applyBatch(batch);
+            if (failure == null) {
+                advanceCheckpoint(batch.get(batch.size() - 1).sequence);
+                return;
+            }
+            if (!isTransient(failure)) {
+                if (batch.size() > 1) {
+                    for (Mutation mutation : batch) {
+                        applyWithRetry(List.of(mutation), maxAttempts);
+                    }
+                } else {
+                    System.err.println("Error applying journaled " + batch.get(0) + ": " + failure.getMessage());
+                    onDiscarded.accept(batch.get(0));
+                    advanceCheckpoint(batch.get(0).sequence);
+                }
+                return;
+            }
+            if (attempt >= maxAttempts || (closed && attempt > 1)) {
+                System.err.println("Database unavailable, journaled changes stay pending: " + failure.getMessage());
+                return;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                if (closed) return;
+            }
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private SQLException applyBatch(List<Mutation> batch) {
+        Connection connection;
+        try {
+            connection = pool.getConnection();
+        } catch (SQLException e) {
+            // Pool exhausted or database down: always worth retrying
+            return new SQLException(e.getMessage(), "08001", e);
+        }
+        try (connection) {
+            if (!checkpointTableReady) {
+                // DDL commits implicitly in MySQL, so never inside the batch transaction
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS journal_checkpoint (" +
+                            "journal_id VARCHAR(36) PRIMARY KEY, " +
+                            "applied_sequence BIGINT NOT NULL)");
+                }
+                checkpointTableReady = true;
+            }
+            connection.setAutoCommit(false);
+            try {
+                long applied = lockCheckpoint(connection);
+                for (Mutation mutation : batch) {
+                    if (mutation.sequence > applied) {
+                        applier.apply(connection, mutation);
+                    }
+                }
+                saveCheckpoint(connection, batch.get(batch.size() - 1).sequence);
+                connection.commit();
+                return null;
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Error during rollback: " + ex.getMessage());
+                }
+                return e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            return e;
+        }
+    }
+
+    private long lockCheckpoint(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT applied_sequence FROM journal_checkpoint WHERE journal_id = ? FOR UPDATE")) {
+            stmt.setString(1, journalId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private void saveCheckpoint(Connection connection, long sequence) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO journal_checkpoint (journal_id, applied_sequence) VALUES (?, ?) "
+                        + "ON DUPLICATE KEY UPDATE applied_sequence = GREATEST(applied_sequence, VALUES(applied_sequence))")) {
+            stmt.setString(1, journalId);
+            stmt.setLong(2, sequence);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return (state != null && (state.startsWith("08") || state.startsWith("40")))
+                || e.getErrorCode() == 1205 || e.getErrorCode() == 1213;
+    }
+
+    private void advanceCheckpoint(long sequence) throws IOException {
+        appliedSequence = sequence;
+        writeCheckpoint(sequence);
+    }
+
+    // Once everything is applied the records are dead weight; start the file over
+    private synchronized void compactIfIdle() throws IOException {
+        if (appliedSequence == writtenSequence && channel.size() > COMPACT_BYTES) {
+            writeCheckpoint(appliedSequence);
+            channel.truncate(0);
+            channel.force(true);
+        }
+    }
+
+    private List<Mutation> recover() throws IOException {
+        List<Mutation> unapplied = new ArrayList<>();
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        while (position + header.capacity() <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            long expectedCrc = header.getInt() & 0xFFFFFFFFL;
+            if (length <= 0 || position + header.capacity() + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            channel.read(body, position + header.capacity());
+            body.flip();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                break;
+            }
+            Mutation mutation = decode(body);
+            if (mutation.sequence > appliedSequence) {
+                unapplied.add(mutation);
+            }
+            position += header.capacity() + length;
+        }
+        if (position < size) {
+            // Torn or corrupt tail from a crash mid-append; it was never acknowledged
+            System.err.println("Discarding " + (size - position) + " bytes of incomplete journal tail.");
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return unapplied;
+    }
+
+    private static ByteBuffer encode(long sequence, MutationType type, List<String> fields) {
+        List<byte[]> encoded = new ArrayList<>(fields.size());
+        int length = Long.BYTES + 1 + Short.BYTES;
+        for (String field : fields) {
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            length += Integer.BYTES + bytes.length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + length);
+        record.putInt(length).putInt(0);
+        record.putLong(sequence).put((byte) type.ordinal()).putShort((short) fields.size());
+        for (byte[] bytes : encoded) {
+            record.putInt(bytes.length).put(bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 2 * Integer.BYTES, length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.flip();
+    }
+
+    private static Mutation decode(ByteBuffer body) {
+        long sequence = body.getLong();
+        MutationType type = MutationType.values()[body.get()];
+        int count = body.getShort();
+        List<String> fields = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[body.getInt()];
+            body.get(bytes);
+            fields.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return new Mutation(sequence, type, List.copyOf(fields));
+    }
+
+    // "<journal id> <sequence>"; files from before the id was kept hold just the sequence and get a
+    // new id, as does a journal started from scratch
+    private long readCheckpoint() throws IOException {
+        journalId = UUID.randomUUID().toString();
+        if (!Files.isRegularFile(checkpointFile)) {
+            return 0;
+        }
+        String[] parts = Files.readString(checkpointFile).trim().split("\\s+");
+        if (parts.length > 1) {
+            journalId = parts[0];
+        }
+        try {
+            return Long.parseLong(parts[parts.length - 1]);
+        } catch (NumberFormatException e) {
+            // Replaying from the start is safe: the database checkpoint still skips what was applied
+            System.err.println("Ignoring unreadable journal checkpoint: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.writeString(temp, journalId + " " + sequence);
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
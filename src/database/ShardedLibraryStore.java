@@ -0,0 +1,303 @@
+package database;
+
+import entities.Book;
+import entities.User;
+import interfaces.LibraryStore;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+// Spreads the catalog over several stores (shards), each a complete LibraryStore of its own.
+// Books and their loans live on the shard that the book id hashes to, so a single-book write or a
+// borrow/return touches exactly one shard. Users are written to every shard, which keeps each
+// shard's loan rows joinable with their user as in an unsharded store; they are read from the
+// first. Whole-catalog reads fan out to all shards in parallel and merge the results.
+public class ShardedLibraryStore implements LibraryStore {
+    private static final int VIRTUAL_NODES = 160;
+
+    private interface ShardQuery<T> {
+        T run(LibraryStore shard) throws SQLException;
+    }
+
+    private final List<String> names;
+    private final List<LibraryStore> shards;
+    private final ConsistentHashRing ring;
+    private final ExecutorService fanOut;
+
+    // names identify the shards on the hash ring; keep them stable, the list order doesn't matter
+    public ShardedLibraryStore(List<String> names, List<LibraryStore> shards) {
+        if (names.size() != shards.size()) {
+            throw new IllegalArgumentException("Expected one name per shard");
+        }
+        this.names = List.copyOf(names);
+        this.shards = List.copyOf(shards);
+        this.ring = new ConsistentHashRing(names, VIRTUAL_NODES);
+        this.fanOut = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public String getShardName(int shard) {
+        return names.get(shard);
+    }
+
+    public int shardOf(String bookId) {
+        return ring.nodeFor(bookId);
+    }
+
+    private LibraryStore shardFor(String bookId) {
+        return shards.get(ring.nodeFor(bookId));
+    }
+
+    @Override
+    public void initialize() throws SQLException {
+        gather(shard -> {
+            shard.initialize();
+            return null;
+        });
+    }
+
+    @Override
+    public void saveBook(Book book) throws SQLException {
+        shardFor(book.getId()).saveBook(book);
+    }
+
+    // Each shard's part is all or nothing; if a later shard fails, the parts already saved are
+    // deleted again, so the batch as a whole still is
+    @Override
+    public void saveBooks(List<Book> books, int batchSize) throws SQLException {
+        List<List<Book>> parts = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Book book : books) {
+            parts.get(ring.nodeFor(book.getId())).add(book);
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            if (parts.get(i).isEmpty()) {
+                continue;
+            }
+            try {
+                shards.get(i).saveBooks(parts.get(i), batchSize);
+            } catch (SQLException e) {
+                for (int saved = 0; saved < i; saved++) {
+                    undoSave(saved, parts.get(saved));
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void undoSave(int shard, List<Book> books) {
+        for (Book book : books) {
+            try {
+                shards.get(shard).deleteBook(book.getId());
+            } catch (SQLException e) {
+                System.err.println("Error undoing partial import on shard " + names.get(shard) + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean updateBook(Book book, long expectedVersion, int copiesDelta) throws SQLException {
+        return shardFor(book.getId()).updateBook(book, expectedVersion, copiesDelta);
+    }
+
+    @Override
+    public void deleteBook(String id) throws SQLException {
+        shardFor(id).deleteBook(id);
+    }
+
+    @Override
+    public Book findBook(String id) throws SQLException {
+        return shardFor(id).findBook(id);
+    }
+
+    // One shard after another, so the sink only ever sees one thread
+    @Override
+    public void forEachBook(Consumer<Book> sink) throws SQLException {
+        for (LibraryStore shard : shards) {
+            shard.forEachBook(sink);
+        }
+    }
+
+    // Every shard's first page after afterId, merged; the smallest ids overall are among them
+    @Override
+    public List<Book> listBooks(String afterId, int limit) throws SQLException {
+        List<Book> merged = new ArrayList<>();
+        for (List<Book> page : gather(shard -> shard.listBooks(afterId, limit))) {
+            merged.addAll(page);
+        }
+        merged.sort(Comparator.comparing(Book::getId));
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    // Written to every shard in order; if one fails, the user is deleted again from the shards
+    // already written, so no shard is left with a user the others don't have
+    @Override
+    public void saveUser(User user) throws SQLException {
+        for (int i = 0; i < shards.size(); i++) {
+            try {
+                shards.get(i).saveUser(user);
+            } catch (SQLException e) {
+                undoSaveUser(i, user.getId());
+                throw e;
+            }
+        }
+    }
+
+    // Deletes the user again from the first count shards
+    private void undoSaveUser(int count, String id) {
+        for (int i = 0; i < count; i++) {
+            try {
+                if (!shards.get(i).deleteUser(id)) {
+                    System.err.println("Error undoing new user on shard " + names.get(i) + ": it already has loans");
+                }
+            } catch (SQLException e) {
+                System.err.println("Error undoing new user on shard " + names.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Deleted shard by shard; if a shard refuses (the user has loans there) or fails, the user is put
+    // back on the shards already done, so every shard keeps agreeing on who exists
+    @Override
+    public boolean deleteUser(String id) throws SQLException {
+        User[] user = new User[1];
+        if (!findUser(id, (userId, name, role) -> user[0] = new User(userId, name, role) {})) {
+            return false;
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            boolean deleted;
+            try {
+                deleted = shards.get(i).deleteUser(id);
+            } catch (SQLException e) {
+                restoreUser(i, user[0]);
+                throw e;
+            }
+            if (!deleted) {
+                restoreUser(i, user[0]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Saves the user again on the first count shards
+    private void restoreUser(int count, User user) {
+        for (int i = 0; i < count; i++) {
+            try {
+                shards.get(i).saveUser(user);
+            } catch (SQLException e) {
+                System.err.println("Error restoring user on shard " + names.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean findUser(String id, UserSink sink) throws SQLException {
+        return shards.get(0).findUser(id, sink);
+    }
+
+    @Override
+    public void forEachUser(UserSink sink) throws SQLException {
+        shards.get(0).forEachUser(sink);
+    }
+
+    @Override
+    public boolean recordBorrow(String userId, String bookId, long dueAtMillis) {
+        return shardFor(bookId).recordBorrow(userId, bookId, dueAtMillis);
+    }
+
+    @Override
+    public boolean recordRenewal(String userId, String bookId, long dueAtMillis) {
+        return shardFor(bookId).recordRenewal(userId, bookId, dueAtMillis);
+    }
+
+    @Override
+    public boolean recordReturn(String userId, String bookId) {
+        return shardFor(bookId).recordReturn(userId, bookId);
+    }
+
+    @Override
+    public void forEachLoan(LoanSink sink) throws SQLException {
+        for (LibraryStore shard : shards) {
+            shard.forEachLoan(sink);
+        }
+    }
+
+    // Each shard's rows already come ordered by user name, and the sort merges those runs
+    @Override
+    public List<String[]> listLoans() throws SQLException {
+        List<String[]> merged = new ArrayList<>();
+        for (List<String[]> rows : gather(LibraryStore::listLoans)) {
+            merged.addAll(rows);
+        }
+        merged.sort(Comparator.comparing(row -> row[1]));
+        return merged;
+    }
+
+    // Null as soon as any shard can't tell
+    @Override
+    public String changeMarker() {
+        StringBuilder marker = new StringBuilder();
+        for (int i = 0; i < shards.size(); i++) {
+            String shardMarker = shards.get(i).changeMarker();
+            if (shardMarker == null) {
+                return null;
+            }
+            marker.append(names.get(i)).append('{').append(shardMarker).append('}');
+        }
+        return marker.toString();
+    }
+
+    @Override
+    public void close() {
+        fanOut.shutdown();
+        for (LibraryStore shard : shards) {
+            shard.close();
+        }
+    }
+
+    // Runs the query on every shard at once; results are in shard order
+    private <T> List<T> gather(ShardQuery<T> query) throws SQLException {
+        List<Future<T>> futures = new ArrayList<>();
+        for (LibraryStore shard : shards) {
+            futures.add(fanOut.submit(() -> query.run(shard)));
+        }
+        List<T> results = new ArrayList<>();
+        SQLException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for shard " + names.get(i), e);
+            } catch (ExecutionException e) {
+                // Wait for the rest anyway, so nothing is still running against a shard afterwards
+                if (failure == null) {
+                    failure = e.getCause() instanceof SQLException sqlException ? sqlException
+                            : new SQLException("Shard " + names.get(i) + " failed", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+}
@@ -0,0 +1,167 @@
+package database;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-connection LRU cache of prepared statements keyed by SQL text. Callers close the
+// handle they get back as usual; the underlying statement stays open for the next caller.
+// Every handle also times its executions into a per-SQL latency histogram.
+class StatementCache {
+    private final Connection connection;
+    private final int capacity;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    StatementCache(Connection connection, int capacity, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    synchronized PreparedStatement prepare(String sql) throws SQLException {
+        CachedStatement cached = capacity > 0 ? statements.get(sql) : null;
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+        } else if (cached != null || capacity <= 0) {
+            // Caching disabled, or the same SQL is already open by this borrower (e.g. nested use):
+            // hand out a private statement that really closes on close()
+            misses.increment();
+            cached = new CachedStatement(sql, connection.prepareStatement(sql));
+            cached.evicted = true;
+        } else {
+            misses.increment();
+            cached = new CachedStatement(sql, connection.prepareStatement(sql));
+            statements.put(sql, cached);
+            evictOverflow();
+        }
+        cached.inUse = true;
+        return cached.newHandle();
+    }
+
+    synchronized void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            closeQuietly(cached.statement);
+        }
+        statements.clear();
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedStatement> leastRecent = statements.values().iterator();
+        while (statements.size() > capacity && leastRecent.hasNext()) {
+            CachedStatement eldest = leastRecent.next();
+            if (eldest.inUse) {
+                // Closed when the current holder releases it
+                eldest.evicted = true;
+            } else {
+                closeQuietly(eldest.statement);
+            }
+            leastRecent.remove();
+        }
+    }
+
+    private synchronized void release(CachedStatement cached) {
+        cached.inUse = false;
+        try {
+            if (cached.evicted) {
+                cached.statement.close();
+            } else {
+                cached.statement.clearParameters();
+            }
+        } catch (SQLException e) {
+            statements.values().remove(cached);
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+
+    private class CachedStatement {
+        final PreparedStatement statement;
+        final LatencyHistogram latency;
+        boolean inUse;
+        boolean evicted;
+
+        CachedStatement(String sql, PreparedStatement statement) {
+            this.statement = statement;
+            this.latency = Metrics.histogram("sql." + sql.replaceAll("\\s+", " "));
+        }
+
+        PreparedStatement newHandle() {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Handle(this));
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean released;
+
+        Handle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!released) {
+                        released = true;
+                        release(cached);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return released || cached.statement.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Cached" + cached.statement;
+                }
+            }
+            if (released) {
+                throw new SQLException("Statement has already been closed");
+            }
+            boolean timed = method.getName().startsWith("execute");
+            long start = timed ? System.nanoTime() : 0;
+            try {
+                return method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (timed) {
+                    cached.latency.record(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Cheap "has anything changed" marker: while writes are counted (there is a snapshot to check),
+// every write transaction bumps a counter row, and the sum of the rows is read back in one tiny
+// query instead of scanning the tables. The counter is split
+// into stripes so concurrent writers don't all queue on one row lock; a connection always bumps
+// the same stripe, and does so before touching any other row, so the stripe locks can't take part
+// in a deadlock with the rows the transaction goes on to write.
+final class WriteCounter {
+    private static final int STRIPES = 32;
+
+    private WriteCounter() {
+    }
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS library_version (" +
+                "stripe TINYINT PRIMARY KEY, " +
+                "counter BIGINT NOT NULL)");
+        StringBuilder rows = new StringBuilder("INSERT IGNORE INTO library_version (stripe, counter) VALUES ");
+        for (int i = 0; i < STRIPES; i++) {
+            rows.append(i == 0 ? "" : ", ").append('(').append(i).append(", 0)");
+        }
+        stmt.execute(rows.toString());
+    }
+
+    // Call first thing in a write transaction; it commits or rolls back with the rest
+    static void bump(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "UPDATE library_version SET counter = counter + 1 WHERE stripe = CONNECTION_ID() % " + STRIPES)) {
+            stmt.executeUpdate();
+        }
+    }
+
+    static long read(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT SUM(counter) FROM library_version")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -1,18 +1,23 @@
 package entities;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Book {
     private String id;
     private String title;
     private String author;
     private String genre;
-    private int availableCopies;
+    // Per-book atomic counter so concurrent borrowers of different titles never contend
+    private final AtomicInteger availableCopies;
+    // Bumped by every descriptive edit (not by loans), so concurrent edits can be detected
+    private volatile long version;
 
     public Book(String id, String title, String author, String genre, int availableCopies) {
         this.id = id;
         this.title = title;
         this.author = author;
         this.genre = genre;
-        this.availableCopies = availableCopies;
+        this.availableCopies = new AtomicInteger(availableCopies);
     }
 
     public String getId() { return id; }
@@ -22,15 +27,47 @@ public class Book {
     public void setGenre(String genre) { this.genre = genre; }
     public void setTitle(String title) { this.title = title; }
     public void setAuthor(String author) { this.author = author; }
-    public void setAvailableCopies(int availableCopies) { this.availableCopies = availableCopies; }
+    public void setAvailableCopies(int availableCopies) { this.availableCopies.set(availableCopies); }
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    public int getAvailableCopies() { return availableCopies.get(); }
+
+    // What to synchronize on for a consistent read or edit of several fields; a book held in
+    // compact storage is handed out as a fresh view per lookup, and views of one book share a lock
+    public Object lock() { return this; }
 
-    public int getAvailableCopies() { return availableCopies; }
+    public void decreaseCopies() { availableCopies.decrementAndGet(); }
+    public void increaseCopies() { availableCopies.incrementAndGet(); }
+    public void addCopies(int delta) { availableCopies.addAndGet(delta); }
 
-    public void decreaseCopies() { availableCopies--; }
-    public void increaseCopies() { availableCopies++; }
+    // Takes one copy only if one is left; never drives the count below zero
+    public boolean tryDecreaseCopies() {
+        int current;
+        do {
+            current = availableCopies.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!availableCopies.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    // Moves the count by delta, relative to whatever loans did meanwhile; fails rather than go negative
+    public boolean tryAddCopies(int delta) {
+        int current;
+        do {
+            current = availableCopies.get();
+            if (current + delta < 0) {
+                return false;
+            }
+        } while (!availableCopies.compareAndSet(current, current + delta));
+        return true;
+    }
 
     @Override
     public String toString() {
-        return id + ": " + title + " by " + author + " [" + genre + "] - Available: " + availableCopies;
+        return getId() + ": " + getTitle() + " by " + getAuthor() + " [" + getGenre() + "] - Available: "
+                + getAvailableCopies();
     }
 }
\ No newline at end of file
@@ -3,58 +3,76 @@ package entities;
 import entities.User;
 import enums.Role;
 import interfaces.Borrowable;
+import interfaces.LoanPersistence;
+import services.LoanLedger;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
 
 public class RegularUser extends User implements Borrowable {
     Map<String, Book> books;
+    private final LoanLedger ledger;
+    private final LoanPersistence persistence;
 
-    public RegularUser(String id, String name, Map<String, Book> books) {
+    public RegularUser(String id, String name, Map<String, Book> books, LoanLedger ledger,
+                       LoanPersistence persistence) {
         super(id, name, Role.REGULAR);
         this.books = books;
+        this.ledger = ledger;
+        this.persistence = persistence;
     }
 
-    public void borrowBook(String bookId) {
+    @Override
+    public List<String> getBorrowedBooks() {
+        return ledger.booksOf(getId());
+    }
+
+    public boolean borrowBook(String bookId, long dueAtMillis) {
         Book book = books.get(bookId);
-        if (book == null) {
-            System.out.println("Book not found.");
-        } else if (book.getAvailableCopies() <= 0) {
-            System.out.println("No available copies.");
-        } else if (borrowedBooks.contains(bookId)) {
-            System.out.println("You have already borrowed this book.");
-        } else {
-            borrowedBooks.add(bookId);
-            book.decreaseCopies();
-            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:library.db")) {
-                PreparedStatement stmt = conn.prepareStatement("UPDATE books SET availableCopies = ? WHERE id = ?");
-                stmt.setInt(1, book.getAvailableCopies());
-                stmt.setString(2, book.getId());
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }            System.out.println("Book borrowed successfully.");
+        // Claiming the loan in the ledger first keeps two concurrent borrows of the same book apart
+        if (book == null || !ledger.add(getId(), bookId)) {
+            return false;
         }
+        boolean persisted = false;
+        try {
+            // Reserve a copy in memory first; losers of a race for the last copy stop here
+            if (!book.tryDecreaseCopies()) {
+                return false;
+            }
+            try {
+                persisted = persistence.recordBorrow(getId(), bookId, dueAtMillis);
+            } finally {
+                if (!persisted) {
+                    // Hand the reserved copy back
+                    book.increaseCopies();
+                }
+            }
+            return persisted;
+        } finally {
+            if (!persisted) {
+                ledger.remove(getId(), bookId);
+            }
+        }
+    }
+
+    // Only a loan the user holds; the new due date replaces the old one
+    public boolean renewBook(String bookId, long dueAtMillis) {
+        return ledger.contains(getId(), bookId) && persistence.recordRenewal(getId(), bookId, dueAtMillis);
     }
 
-    public void returnBook(String bookId) {
-        if (!borrowedBooks.contains(bookId)) {
-            System.out.println("You haven't borrowed this book.");
-        } else {
-            borrowedBooks.remove(bookId);
-            Book book = books.get(bookId);
+    public boolean returnBook(String bookId) {
+        // Same claim on the way back, so a loan is only ever returned once
+        if (!ledger.remove(getId(), bookId)) {
+            return false;
+        }
+        if (!persistence.recordReturn(getId(), bookId)) {
+            ledger.add(getId(), bookId);
+            return false;
+        }
+        Book book = books.get(bookId);
+        if (book != null) {
             book.increaseCopies();
-            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:library.db")) {
-                PreparedStatement stmt = conn.prepareStatement("UPDATE books SET availableCopies = ? WHERE id = ?");
-                stmt.setInt(1, book.getAvailableCopies());
-                stmt.setString(2, book.getId());
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }            System.out.println("Book returned successfully.");
         }
+        return true;
     }
-}
\ No newline at end of file
+}
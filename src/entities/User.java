@@ -2,14 +2,12 @@ package entities;
 
 import enums.Role;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public abstract class User {
     private String id;
     private String name;
     Role role;
-    List<String> borrowedBooks = new ArrayList<>();
 
     public User(String id, String name, Role role) {
         this.id = id;
@@ -28,4 +26,7 @@ public abstract class User {
     public Role getRole() {
         return role;
     }
+    public List<String> getBorrowedBooks() {
+        return List.of();
+    }
 }
@@ -0,0 +1,6 @@
+package enums;
+
+// Journaled write kinds; the ordinal is stored on disk, so only append new values
+public enum MutationType {
+    SAVE_BOOK, UPDATE_BOOK, DELETE_BOOK, SAVE_USER, BORROW, RETURN, EDIT_BOOK, RENEW, DELETE_USER
+}
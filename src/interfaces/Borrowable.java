@@ -1,6 +1,7 @@
 package interfaces;
 
 public interface Borrowable {
-    void borrowBook(String bookId);
-    void returnBook(String bookId);
+    boolean borrowBook(String bookId, long dueAtMillis);
+    boolean renewBook(String bookId, long dueAtMillis);
+    boolean returnBook(String bookId);
 }
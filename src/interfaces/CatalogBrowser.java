@@ -0,0 +1,21 @@
+package interfaces;
+
+import entities.Book;
+
+import java.util.List;
+import java.util.Map;
+
+// Genre/author/availability facets over the catalog. Implementations that keep their own index
+// are told about every change; ones that query the database directly can ignore those calls.
+public interface CatalogBrowser {
+    void add(Book book);
+    void remove(String id);
+    // Call after any change to a book's copy count
+    void refreshAvailability(Book book);
+
+    List<String> genres();
+    // Null genre/author means "any". Up to limit matches with ids after afterId ("" for the first
+    // page), in id order, so a large result is read a page at a time
+    List<Book> find(String genre, String author, boolean availableOnly, String afterId, int limit);
+    Map<String, Integer> countByGenre(String author, boolean availableOnly);
+}
@@ -0,0 +1,57 @@
+package interfaces;
+
+import entities.Book;
+import entities.User;
+import enums.Role;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Durable home of books, users and loans. The app keeps its working copy in memory and calls the
+// store for every change; loan changes come through the LoanPersistence methods. Failures are
+// reported as SQLException whatever the backend.
+public interface LibraryStore extends LoanPersistence, AutoCloseable {
+    // The store hands out user rows; building User objects is up to the caller
+    interface UserSink {
+        void accept(String id, String name, Role role);
+    }
+
+    // dueAtMillis is 0 for loans recorded before due dates were kept
+    interface LoanSink {
+        void accept(String userId, String bookId, long dueAtMillis);
+    }
+
+    // Creates tables or reads the data file; called once before anything else
+    void initialize() throws SQLException;
+
+    void saveBook(Book book) throws SQLException;
+    // All or nothing; batchSize is how many rows go to the backend per round trip
+    void saveBooks(List<Book> books, int batchSize) throws SQLException;
+    // Sets title/author/genre and moves availableCopies by copiesDelta, only if the stored version is
+    // still expectedVersion and the copies would not go negative; bumps the version. Loans never
+    // conflict with it. Returns false when nothing was changed (re-read to find out why).
+    boolean updateBook(Book book, long expectedVersion, int copiesDelta) throws SQLException;
+    // Also drops the book's loans
+    void deleteBook(String id) throws SQLException;
+    Book findBook(String id) throws SQLException;
+    void forEachBook(Consumer<Book> sink) throws SQLException;
+    // Up to limit books with ids after afterId ("" for the first page), in id order
+    List<Book> listBooks(String afterId, int limit) throws SQLException;
+
+    void saveUser(User user) throws SQLException;
+    // Only a user without loans is deleted; false when there is none or they still hold a loan
+    boolean deleteUser(String id) throws SQLException;
+    boolean findUser(String id, UserSink sink) throws SQLException;
+    void forEachUser(UserSink sink) throws SQLException;
+
+    void forEachLoan(LoanSink sink) throws SQLException;
+    // {userId, userName, bookId, bookTitle, dueAtMillis} rows ordered by user name
+    List<String[]> listLoans() throws SQLException;
+
+    // Changes whenever any stored row does; null when the backend can't tell
+    String changeMarker();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,26 @@
+package interfaces;
+
+public interface LoanPersistence {
+    // Each returns false when the store refused the change (no copy left, nothing to return or renew)
+    boolean recordBorrow(String userId, String bookId, long dueAtMillis);
+    boolean recordRenewal(String userId, String bookId, long dueAtMillis);
+    boolean recordReturn(String userId, String bookId);
+
+    // For state that only lives in memory, e.g. synthetic users in tests and benchmarks
+    LoanPersistence NONE = new LoanPersistence() {
+        @Override
+        public boolean recordBorrow(String userId, String bookId, long dueAtMillis) {
+            return true;
+        }
+
+        @Override
+        public boolean recordRenewal(String userId, String bookId, long dueAtMillis) {
+            return true;
+        }
+
+        @Override
+        public boolean recordReturn(String userId, String bookId) {
+            return true;
+        }
+    };
+}
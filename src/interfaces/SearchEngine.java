@@ -0,0 +1,14 @@
+package interfaces;
+
+import java.util.List;
+
+public interface SearchEngine<T> {
+    void add(T item);
+    void remove(String id);
+    List<T> search(String query);
+
+    default void update(T item, String id) {
+        remove(id);
+        add(item);
+    }
+}
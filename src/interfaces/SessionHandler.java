@@ -0,0 +1,8 @@
+package interfaces;
+
+import java.io.PrintStream;
+import java.util.Scanner;
+
+public interface SessionHandler {
+    void handle(Scanner in, PrintStream out);
+}
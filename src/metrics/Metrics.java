@@ -0,0 +1,90 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process-wide registry of named counters, latency histograms and gauges
+public class Metrics {
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // Records the time since startNanos (from System.nanoTime()) under the given histogram
+    public static void recordSince(String name, long startNanos) {
+        histogram(name).record(System.nanoTime() - startNanos);
+    }
+
+    // Flat name -> value view used by both the JMX bean and the text dump
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".meanMicros", histogram.getMeanNanos() / 1000.0);
+            values.put(name + ".p50Micros", histogram.percentileNanos(50) / 1000.0);
+            values.put(name + ".p99Micros", histogram.percentileNanos(99) / 1000.0);
+            values.put(name + ".p999Micros", histogram.percentileNanos(99.9) / 1000.0);
+            values.put(name + ".maxMicros", histogram.getMaxNanos() / 1000.0);
+        });
+        return values;
+    }
+
+    public static void dump(PrintStream out) {
+        StringBuilder text = new StringBuilder("--- Metrics ---").append(System.lineSeparator());
+        new TreeMap<>(counters).forEach((name, counter) ->
+                text.append(String.format("%-60s %d%n", name, counter.sum())));
+        new TreeMap<>(gauges).forEach((name, gauge) ->
+                text.append(String.format("%-60s %d%n", name, gauge.getAsLong())));
+        new TreeMap<>(histograms).forEach((name, h) -> text.append(String.format(
+                "%-60s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n",
+                name, h.getCount(), h.getMeanNanos() / 1000.0, h.percentileNanos(50) / 1000.0,
+                h.percentileNanos(99) / 1000.0, h.percentileNanos(99.9) / 1000.0, h.getMaxNanos() / 1000.0)));
+        out.print(text);
+        out.flush();
+    }
+
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new MetricsMBean(), new ObjectName("library:type=Metrics"));
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public static void startPeriodicDump(long intervalSeconds, PrintStream out) {
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(out), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+}
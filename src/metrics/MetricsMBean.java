@@ -0,0 +1,63 @@
+package metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import java.util.Map;
+
+// Read-only JMX view of the registry; attributes appear as metrics get created
+class MetricsMBean implements DynamicMBean {
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = Metrics.snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snapshot = Metrics.snapshot();
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            Number value = snapshot.get(name);
+            if (value != null) {
+                list.add(new Attribute(name, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> snapshot = Metrics.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (Map.Entry<String, Number> entry : snapshot.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false);
+        }
+        return new MBeanInfo(MetricsMBean.class.getName(), "Library operation and SQL metrics",
+                attributes, null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,87 @@
+package server;
+
+import interfaces.SessionHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Line-oriented TCP front-end: every client gets the same menus as the console, on its own thread
+public class LibraryServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final SessionHandler handler;
+    private final ExecutorService sessions = newSessionExecutor();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    public LibraryServer(int port, SessionHandler handler) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.handler = handler;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) return;
+                throw e;
+            }
+            sessions.execute(() -> runSession(client));
+        }
+    }
+
+    private void runSession(Socket client) {
+        activeSessions.incrementAndGet();
+        try (client;
+             Scanner in = new Scanner(client.getInputStream(), StandardCharsets.UTF_8);
+             PrintStream out = new PrintStream(new BufferedOutputStream(client.getOutputStream()),
+                     true, StandardCharsets.UTF_8)) {
+            handler.handle(in, out);
+        } catch (NoSuchElementException e) {
+            // Client disconnected
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Session " + client.getRemoteSocketAddress() + " failed: " + e.getMessage());
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+    }
+
+    // Virtual threads when the runtime has them (Java 21+), plain threads otherwise. On 19/20 the
+    // method exists but refuses to run without --enable-preview, so that falls back too.
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "library-session-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
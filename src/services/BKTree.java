@@ -0,0 +1,104 @@
+package services;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.ObjIntConsumer;
+
+// Burkhard-Keller tree over Levenshtein distance. Each child edge is labelled with its distance to
+// the parent, so a lookup within k of the query only descends edges in [d - k, d + k]. Terms can't
+// be unlinked; callers filter dead terms out and rebuild when enough of them pile up.
+class BKTree {
+    private static class Node {
+        final String term;
+        Node[] children; // indexed by distance to this node; 0 is never used
+
+        Node(String term) {
+            this.term = term;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    // Returns false if the term was already in the tree
+    boolean add(String term) {
+        if (root == null) {
+            root = new Node(term);
+            size++;
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(term, node.term);
+            if (distance == 0) {
+                return false;
+            }
+            if (node.children == null) {
+                node.children = new Node[distance + 1];
+            } else if (node.children.length <= distance) {
+                node.children = Arrays.copyOf(node.children, distance + 1);
+            }
+            Node child = node.children[distance];
+            if (child == null) {
+                node.children[distance] = new Node(term);
+                size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    void search(String query, int maxDistance, ObjIntConsumer<String> matches) {
+        if (root == null) {
+            return;
+        }
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(query, node.term);
+            if (distance <= maxDistance) {
+                matches.accept(node.term, distance);
+            }
+            if (node.children != null) {
+                int from = Math.max(1, distance - maxDistance);
+                int to = Math.min(node.children.length - 1, distance + maxDistance);
+                for (int d = from; d <= to; d++) {
+                    if (node.children[d] != null) {
+                        pending.push(node.children[d]);
+                    }
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    static int distance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitute = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,181 @@
+package services;
+
+import entities.Book;
+import interfaces.CatalogBrowser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Secondary indexes over the in-memory catalog: genre -> ids, author -> ids, the set of ids with
+// copies on the shelf and the set of all ids. Keys are matched case-insensitively. The id sets are
+// kept sorted, so a page of results is read from where the last one ended instead of sorting
+// every match.
+public class CatalogIndex implements CatalogBrowser {
+    // Ids in order, with their count kept alongside (a skip list's size() walks the whole list)
+    private static final class Posting {
+        final NavigableSet<String> ids = new ConcurrentSkipListSet<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(String id) {
+            if (ids.add(id)) {
+                size.incrementAndGet();
+            }
+        }
+
+        void remove(String id) {
+            if (ids.remove(id)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private static final Posting EMPTY = new Posting();
+
+    private final Map<String, Book> books;
+    private final Map<String, Posting> byGenre = new ConcurrentHashMap<>();
+    private final Map<String, Posting> byAuthor = new ConcurrentHashMap<>();
+    private final Posting available = new Posting();
+    private final Posting all = new Posting();
+    // What each id was indexed under, so removal doesn't depend on the (possibly edited) Book
+    private final Map<String, String[]> indexedKeys = new ConcurrentHashMap<>();
+    private final Map<String, String> genreNames = new ConcurrentHashMap<>();
+
+    public CatalogIndex(Map<String, Book> books) {
+        this.books = books;
+    }
+
+    @Override
+    public synchronized void add(Book book) {
+        remove(book.getId());
+        String genre = key(book.getGenre());
+        String author = key(book.getAuthor());
+        indexedKeys.put(book.getId(), new String[]{genre, author});
+        all.add(book.getId());
+        genreNames.putIfAbsent(genre, book.getGenre());
+        byGenre.computeIfAbsent(genre, k -> new Posting()).add(book.getId());
+        byAuthor.computeIfAbsent(author, k -> new Posting()).add(book.getId());
+        refreshAvailability(book);
+    }
+
+    @Override
+    public synchronized void remove(String id) {
+        String[] keys = indexedKeys.remove(id);
+        available.remove(id);
+        if (keys == null) {
+            return;
+        }
+        all.remove(id);
+        if (removePosting(byGenre, keys[0], id)) {
+            genreNames.remove(keys[0]);
+        }
+        removePosting(byAuthor, keys[1], id);
+    }
+
+    @Override
+    public void refreshAvailability(Book book) {
+        synchronized (book.lock()) {
+            if (book.getAvailableCopies() > 0 && indexedKeys.containsKey(book.getId())) {
+                available.add(book.getId());
+            } else {
+                available.remove(book.getId());
+            }
+        }
+    }
+
+    // Genres that currently have at least one book, in display form
+    @Override
+    public List<String> genres() {
+        List<String> names = new ArrayList<>(genreNames.values());
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    // Books matching every given facet; null genre/author means "any". Walks the smallest of the
+    // facets' id sets from afterId on until the page is full, checking the other facets against
+    // what the id was indexed under (a hash lookup, where probing the other sorted sets would not be).
+    @Override
+    public List<Book> find(String genre, String author, boolean availableOnly, String afterId, int limit) {
+        List<Book> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+        String genreKey = genre == null ? null : key(genre);
+        String authorKey = author == null ? null : key(author);
+        for (String id : smallest(genre, author, availableOnly).ids.tailSet(afterId, false)) {
+            if (matches(id, genreKey, authorKey)) {
+                Book book = books.get(id);
+                if (book != null && (!availableOnly || book.getAvailableCopies() > 0)) {
+                    results.add(book);
+                    if (results.size() == limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Per-genre counts for the books matching the author/availability facets
+    @Override
+    public Map<String, Integer> countByGenre(String author, boolean availableOnly) {
+        Map<String, Integer> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (author == null && !availableOnly) {
+            byGenre.forEach((genre, ids) -> {
+                if (ids.size.get() > 0) counts.put(genreNames.getOrDefault(genre, genre), ids.size.get());
+            });
+            return counts;
+        }
+        String authorKey = author == null ? null : key(author);
+        for (String id : smallest(null, author, availableOnly).ids) {
+            String[] keys = indexedKeys.get(id);
+            if (keys != null && (authorKey == null || authorKey.equals(keys[1]))
+                    && (!availableOnly || available.ids.contains(id))) {
+                counts.merge(genreNames.getOrDefault(keys[0], keys[0]), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    // The smallest id set among the given facets; all ids when there are none
+    private Posting smallest(String genre, String author, boolean availableOnly) {
+        List<Posting> filters = new ArrayList<>();
+        if (genre != null) filters.add(byGenre.getOrDefault(key(genre), EMPTY));
+        if (author != null) filters.add(byAuthor.getOrDefault(key(author), EMPTY));
+        if (availableOnly) filters.add(available);
+        if (filters.isEmpty()) {
+            return all;
+        }
+        return Collections.min(filters, Comparator.comparingInt(posting -> posting.size.get()));
+    }
+
+    // Whether the id is still indexed under the given genre/author keys (null matches anything)
+    private boolean matches(String id, String genreKey, String authorKey) {
+        String[] keys = indexedKeys.get(id);
+        return keys != null && (genreKey == null || genreKey.equals(keys[0]))
+                && (authorKey == null || authorKey.equals(keys[1]));
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Returns true when the posting list became empty and was dropped
+    private static boolean removePosting(Map<String, Posting> postings, String key, String id) {
+        boolean[] emptied = new boolean[1];
+        postings.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            emptied[0] = ids.size.get() == 0;
+            return emptied[0] ? null : ids;
+        });
+        return emptied[0];
+    }
+}
@@ -0,0 +1,971 @@
+package services;
+
+import entities.Book;
+import interfaces.CatalogBrowser;
+import interfaces.SearchEngine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// The catalog as columns instead of a Book object per title. Ids and titles are UTF-8 bytes packed
+// into one array; authors and genres are dictionary-encoded, so each distinct name is stored once;
+// copy counts and versions are primitive arrays updated with atomic compare-and-set; an
+// open-addressing table of row numbers finds an id. get() returns a Book view that reads and
+// writes its row, so the rest of the app is unchanged. Being the data itself, it also serves the
+// genre/author facets and substring search by scanning the encoded columns, with nothing to
+// maintain per title.
+// Space is given back as books come and go: a removed book's row is reused by the next one added,
+// its dictionary entries go once no row uses them, and the text is rewritten without the bytes of
+// removed books and old titles once those make up half of it. When more than half the rows are
+// free, the live rows slide down over them. Each row carries a generation that changes whenever a
+// different book takes it, so a view can tell when its book has moved or gone.
+public class CompactCatalog extends AbstractMap<String, Book> implements CatalogBrowser, SearchEngine<Book> {
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAX_FIELD_BYTES = 0xFFFF;
+    private static final int INITIAL_ROWS = 1024;
+    private static final int INITIAL_SLOTS = 2048;
+    private static final int INITIAL_TEXT = 1 << 16;
+
+    // Distinct values, each with the number of live rows using it. A value no row uses any more is
+    // dropped, and its id (null in values) goes to the next new value.
+    private static final class Dictionary {
+        final List<String> values = new ArrayList<>();
+        final List<String> lowerCase = new ArrayList<>(); // for substring search
+        final Map<String, Integer> ids = new HashMap<>();
+        final Map<String, List<Integer>> idsByKey = new HashMap<>(); // case-folded value -> ids
+        final List<Integer> freeIds = new ArrayList<>();
+        int[] rowCounts = new int[16];
+
+        int acquire(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                if (freeIds.isEmpty()) {
+                    id = values.size();
+                    values.add(value);
+                    lowerCase.add(value.toLowerCase(Locale.ROOT));
+                    if (id == rowCounts.length) {
+                        rowCounts = Arrays.copyOf(rowCounts, id * 2);
+                    }
+                } else {
+                    id = freeIds.remove(freeIds.size() - 1);
+                    values.set(id, value);
+                    lowerCase.set(id, value.toLowerCase(Locale.ROOT));
+                }
+                ids.put(value, id);
+                idsByKey.computeIfAbsent(key(value), k -> new ArrayList<>(1)).add(id);
+            }
+            rowCounts[id]++;
+            return id;
+        }
+
+        void release(int id) {
+            if (--rowCounts[id] > 0) {
+                return;
+            }
+            String value = values.get(id);
+            ids.remove(value);
+            List<Integer> sameKey = idsByKey.get(key(value));
+            sameKey.remove(Integer.valueOf(id));
+            if (sameKey.isEmpty()) {
+                idsByKey.remove(key(value));
+            }
+            values.set(id, null);
+            lowerCase.set(id, null);
+            freeIds.add(id);
+        }
+
+        int size() {
+            return values.size() - freeIds.size();
+        }
+
+        // Ids whose value matches case-insensitively; null value matches everything, and null
+        // comes back when nothing can match
+        boolean[] matching(String value) {
+            boolean[] match = new boolean[values.size()];
+            if (value == null) {
+                Arrays.fill(match, true);
+                return match;
+            }
+            List<Integer> matched = idsByKey.get(key(value));
+            if (matched == null) {
+                return null;
+            }
+            for (int id : matched) {
+                match[id] = true;
+            }
+            return match;
+        }
+
+        // Ids whose lower-cased value contains the lower-cased needle
+        boolean[] containing(String needle) {
+            boolean[] match = new boolean[values.size()];
+            for (int i = 0; i < match.length; i++) {
+                String value = lowerCase.get(i);
+                match[i] = value != null && value.contains(needle);
+            }
+            return match;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] bookLocks = new Object[LOCK_STRIPES];
+    private final Dictionary authors = new Dictionary();
+    private final Dictionary genres = new Dictionary();
+
+    private byte[] text = new byte[INITIAL_TEXT];
+    private int textLength;
+    private int deadBytes;                              // text no live row points at any more
+    private int[] textStart = new int[INITIAL_ROWS];    // -1 while the row is free
+    private int[] lengths = new int[INITIAL_ROWS];      // id bytes << 16 | title bytes
+    private int[] authorIds = new int[INITIAL_ROWS];
+    private int[] genreIds = new int[INITIAL_ROWS];
+    private int[] copies = new int[INITIAL_ROWS];
+    private long[] versions = new long[INITIAL_ROWS];
+    private int[] generations = new int[INITIAL_ROWS];
+    private int nextGeneration;
+    private int rows;                                   // rows in use, live or free
+    private int liveRows;
+    private final BitSet freeRows = new BitSet();
+    private int firstFree;                              // no row below this one is free
+    private int[] slots = new int[INITIAL_SLOTS];       // row + 1, 0 when empty
+    // Where each open iterator has got to, moved along when the rows slide down
+    private final Map<Cursor, Boolean> cursors = new WeakHashMap<>();
+
+    private static final class Cursor {
+        int row;
+    }
+
+    public CompactCatalog() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            bookLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public Book get(Object key) {
+        if (!(key instanceof String id)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int row = find(id.getBytes(StandardCharsets.UTF_8));
+            return row < 0 ? null : new View(row, id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String id)) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return find(id.getBytes(StandardCharsets.UTF_8)) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Copies the book in; an existing book keeps its row and generation, so views of it stay valid
+    @Override
+    public Book put(String id, Book book) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] titleBytes = book.getTitle().getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > MAX_FIELD_BYTES || titleBytes.length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("Book id or title too long: " + id);
+        }
+        lock.writeLock().lock();
+        try {
+            if (book instanceof View view && view.owner() == this && id.equals(view.getId()) && view.row() >= 0) {
+                return view;
+            }
+            int row = find(idBytes);
+            Book previous = null;
+            if (row >= 0) {
+                previous = detach(row, id);
+                authors.release(authorIds[row]);
+                genres.release(genreIds[row]);
+            } else {
+                row = claimRow(idBytes);
+            }
+            writeTitle(row, idBytes.length, titleBytes);
+            authorIds[row] = authors.acquire(book.getAuthor());
+            genreIds[row] = genres.acquire(book.getGenre());
+            INTS.setVolatile(copies, row, book.getAvailableCopies());
+            LONGS.setVolatile(versions, row, book.getVersion());
+            compact();
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Book remove(Object key) {
+        if (!(key instanceof String id)) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try {
+            int row = find(id.getBytes(StandardCharsets.UTF_8));
+            if (row < 0) {
+                return null;
+            }
+            Book removed = detach(row, id);
+            removeSlot(row);
+            authors.release(authorIds[row]);
+            genres.release(genreIds[row]);
+            freeRow(row);
+            compact();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Weakly consistent, like the concurrent map it stands in for: books added while iterating
+    // may or may not be seen
+    @Override
+    public Set<Entry<String, Book>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Book>> iterator() {
+                return new Iterator<>() {
+                    private final Cursor cursor = openCursor();
+                    private View next = advance(cursor);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry<String, Book> next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        View view = next;
+                        next = advance(cursor);
+                        return new SimpleImmutableEntry<>(view.getId(), view);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CompactCatalog.this.size();
+            }
+        };
+    }
+
+    // Heap held by the columns, the text and the dictionaries (at about 48 bytes per distinct name)
+    public long sizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long columns = (long) textStart.length * (6 * Integer.BYTES + Long.BYTES);
+            long names = 48L * (authors.size() + genres.size());
+            for (String name : authors.values) names += name == null ? 0 : name.length();
+            for (String name : genres.values) names += name == null ? 0 : name.length();
+            return text.length + columns + (long) slots.length * Integer.BYTES + freeRows.size() / 8 + names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The catalog is its own index: changes reach it through the map and the views
+    @Override
+    public void add(Book book) {
+    }
+
+    @Override
+    public void update(Book book, String id) {
+    }
+
+    // Overloads Map.remove, so a String key lands here: remove the row rather than ignore it
+    @Override
+    public void remove(String id) {
+        remove((Object) id);
+    }
+
+    @Override
+    public void refreshAvailability(Book book) {
+    }
+
+    // The same matches as a linear scan over the views, in row order, but ASCII titles are matched
+    // in place instead of being decoded
+    @Override
+    public List<Book> search(String query) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        byte[] pattern = needle.getBytes(StandardCharsets.UTF_8);
+        boolean asciiNeedle = pattern.length == needle.length();
+        List<Book> results = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            boolean[] authorMatch = authors.containing(needle);
+            boolean[] genreMatch = genres.containing(needle);
+            for (int row = 0, end = rows; row < end; row++) {
+                int start = textStart[row];
+                if (start >= 0 && (authorMatch[authorIds[row]] || genreMatch[genreIds[row]]
+                        || titleContains(start + (lengths[row] >>> 16), lengths[row] & MAX_FIELD_BYTES,
+                        needle, pattern, asciiNeedle))) {
+                    results.add(new View(row, null));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    @Override
+    public List<String> genres() {
+        lock.readLock().lock();
+        try {
+            Map<String, String> names = new TreeMap<>();
+            for (int id = 0; id < genres.values.size(); id++) {
+                if (genres.rowCounts[id] > 0) {
+                    names.putIfAbsent(key(genres.values.get(id)), genres.values.get(id));
+                }
+            }
+            List<String> result = new ArrayList<>(names.values());
+            result.sort(String.CASE_INSENSITIVE_ORDER);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> find(String genre, String author, boolean availableOnly, String afterId, int limit) {
+        List<Book> results = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            boolean[] genreMatch = genres.matching(genre);
+            boolean[] authorMatch = authors.matching(author);
+            if (genreMatch == null || authorMatch == null) {
+                return results;
+            }
+            // Ids first, so only the page's books are decoded into views
+            TreeMap<String, Integer> page = new TreeMap<>();
+            int[] starts = textStart, genreColumn = genreIds, authorColumn = authorIds;
+            for (int row = 0, end = rows; row < end; row++) {
+                if (authorMatch[authorColumn[row]] && genreMatch[genreColumn[row]] && starts[row] >= 0
+                        && (!availableOnly || (int) INTS.getVolatile(copies, row) > 0)) {
+                    String id = new String(text, starts[row], lengths[row] >>> 16, StandardCharsets.UTF_8);
+                    if (id.compareTo(afterId) > 0 && (page.size() < limit || limit > 0 && id.compareTo(page.lastKey()) < 0)) {
+                        page.put(id, row);
+                        if (page.size() > limit) {
+                            page.pollLastEntry();
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, Integer> entry : page.entrySet()) {
+                results.add(new View(entry.getValue(), entry.getKey()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    @Override
+    public Map<String, Integer> countByGenre(String author, boolean availableOnly) {
+        Map<String, Integer> counts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        lock.readLock().lock();
+        try {
+            boolean[] authorMatch = authors.matching(author);
+            if (authorMatch == null) {
+                return counts;
+            }
+            int[] perGenre = new int[genres.values.size()];
+            int[] starts = textStart, genreColumn = genreIds, authorColumn = authorIds;
+            for (int row = 0, end = rows; row < end; row++) {
+                if (authorMatch[authorColumn[row]] && starts[row] >= 0
+                        && (!availableOnly || (int) INTS.getVolatile(copies, row) > 0)) {
+                    perGenre[genreColumn[row]]++;
+                }
+            }
+            for (int id = 0; id < perGenre.length; id++) {
+                if (perGenre[id] > 0) {
+                    counts.merge(genres.values.get(id), perGenre[id], Integer::sum);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    // A book read through the catalog; every call goes to the book's row, so views never go stale.
+    // A view whose book has been removed carries on alone, as a removed Book would, with the values
+    // it last read from the row. The title is only decoded when asked for, so a view that never read
+    // it before its book went has none.
+    private final class View extends Book {
+        private final String id;
+        private final int generation;
+        private int row; // follows the book when the rows slide down
+
+        // Under the read lock
+        View(int row, String id) {
+            super(id, null, authors.values.get(authorIds[row]), genres.values.get(genreIds[row]),
+                    (int) INTS.getVolatile(copies, row));
+            this.id = id != null ? id : new String(text, textStart[row], lengths[row] >>> 16, StandardCharsets.UTF_8);
+            this.generation = generations[row];
+            this.row = row;
+            super.setVersion((long) LONGS.getVolatile(versions, row));
+        }
+
+        CompactCatalog owner() {
+            return CompactCatalog.this;
+        }
+
+        // The book's row, or -1 once it is gone; under the lock
+        int row() {
+            int current = row;
+            if (current < rows && generations[current] == generation) {
+                return current;
+            }
+            current = find(id.getBytes(StandardCharsets.UTF_8));
+            if (current < 0 || generations[current] != generation) {
+                return -1;
+            }
+            row = current;
+            return current;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getTitle() {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    int start = textStart[row] + (lengths[row] >>> 16);
+                    super.setTitle(new String(text, start, lengths[row] & MAX_FIELD_BYTES, StandardCharsets.UTF_8));
+                }
+                return super.getTitle();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public String getAuthor() {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    super.setAuthor(authors.values.get(authorIds[row]));
+                }
+                return super.getAuthor();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public String getGenre() {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    super.setGenre(genres.values.get(genreIds[row]));
+                }
+                return super.getGenre();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void setTitle(String title) {
+            byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+            if (titleBytes.length > MAX_FIELD_BYTES) {
+                throw new IllegalArgumentException("Title too long: " + title);
+            }
+            lock.writeLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    writeTitle(row, lengths[row] >>> 16, titleBytes);
+                    compact();
+                } else {
+                    super.setTitle(title);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void setAuthor(String author) {
+            lock.writeLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    authors.release(authorIds[row]);
+                    authorIds[row] = authors.acquire(author);
+                } else {
+                    super.setAuthor(author);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void setGenre(String genre) {
+            lock.writeLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    genres.release(genreIds[row]);
+                    genreIds[row] = genres.acquire(genre);
+                } else {
+                    super.setGenre(genre);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public int getAvailableCopies() {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                return row >= 0 ? (int) INTS.getVolatile(copies, row) : super.getAvailableCopies();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void setAvailableCopies(int availableCopies) {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    INTS.setVolatile(copies, row, availableCopies);
+                } else {
+                    super.setAvailableCopies(availableCopies);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void decreaseCopies() {
+            addCopies(-1);
+        }
+
+        @Override
+        public void increaseCopies() {
+            addCopies(1);
+        }
+
+        // The read lock only keeps the arrays from being swapped or rows moved meanwhile
+        @Override
+        public void addCopies(int delta) {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    INTS.getAndAdd(copies, row, delta);
+                } else {
+                    super.addCopies(delta);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean tryDecreaseCopies() {
+            return tryAddCopies(-1);
+        }
+
+        @Override
+        public boolean tryAddCopies(int delta) {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                if (row < 0) {
+                    return super.tryAddCopies(delta);
+                }
+                int current;
+                do {
+                    current = (int) INTS.getVolatile(copies, row);
+                    if (current + delta < 0) {
+                        return false;
+                    }
+                } while (!INTS.compareAndSet(copies, row, current, current + delta));
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public long getVersion() {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                return row >= 0 ? (long) LONGS.getVolatile(versions, row) : super.getVersion();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void setVersion(long version) {
+            lock.readLock().lock();
+            try {
+                int row = row();
+                if (row >= 0) {
+                    LONGS.setVolatile(versions, row, version);
+                } else {
+                    super.setVersion(version);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // By id rather than row, since the book's row can change
+        @Override
+        public Object lock() {
+            return bookLocks[Math.floorMod(id.hashCode(), LOCK_STRIPES)];
+        }
+    }
+
+    private Cursor openCursor() {
+        Cursor cursor = new Cursor();
+        synchronized (cursors) {
+            cursors.put(cursor, Boolean.TRUE);
+        }
+        return cursor;
+    }
+
+    // The next live book from where the cursor stands, null at the end
+    private View advance(Cursor cursor) {
+        lock.readLock().lock();
+        try {
+            int row = cursor.row;
+            while (row < rows && textStart[row] < 0) {
+                row++;
+            }
+            if (row < rows) {
+                cursor.row = row + 1;
+                return new View(row, null);
+            }
+            synchronized (cursors) {
+                cursors.remove(cursor);
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Book detach(int row, String id) {
+        int titleStart = textStart[row] + (lengths[row] >>> 16);
+        Book copy = new Book(id, new String(text, titleStart, lengths[row] & MAX_FIELD_BYTES, StandardCharsets.UTF_8),
+                authors.values.get(authorIds[row]), genres.values.get(genreIds[row]), (int) INTS.getVolatile(copies, row));
+        copy.setVersion((long) LONGS.getVolatile(versions, row));
+        return copy;
+    }
+
+    // The lowest free row, or a new one at the end
+    private int claimRow(byte[] idBytes) {
+        int row = liveRows < rows ? freeRows.nextSetBit(firstFree) : -1;
+        if (row >= 0) {
+            freeRows.clear(row);
+            firstFree = row + 1;
+        } else {
+            if (rows == textStart.length) {
+                resizeRows(rows * 2);
+            }
+            row = rows++;
+        }
+        if ((liveRows + 1) * 2 > slots.length) {
+            resizeSlots(slots.length * 2);
+        }
+        textStart[row] = textLength;
+        lengths[row] = idBytes.length << 16;
+        appendText(idBytes);
+        generations[row] = ++nextGeneration;
+        liveRows++;
+        insertSlot(row, hash(idBytes, 0, idBytes.length));
+        return row;
+    }
+
+    // A new generation right away, so views of the removed book stop reading the row
+    private void freeRow(int row) {
+        deadBytes += (lengths[row] >>> 16) + (lengths[row] & MAX_FIELD_BYTES);
+        textStart[row] = -1;
+        lengths[row] = 0;
+        generations[row] = ++nextGeneration;
+        liveRows--;
+        freeRows.set(row);
+        firstFree = Math.min(firstFree, row);
+        while (rows > 0 && textStart[rows - 1] < 0) {
+            freeRows.clear(--rows);
+        }
+    }
+
+    // After every change, under the write lock; each pass costs about as much as the changes that
+    // made it necessary
+    private void compact() {
+        if (deadBytes > INITIAL_TEXT && deadBytes > textLength / 2) {
+            compactText();
+        }
+        int freeCount = rows - liveRows;
+        if (freeCount > INITIAL_ROWS && freeCount > rows / 2) {
+            compactRows();
+        }
+        if (textStart.length > INITIAL_ROWS && rows < textStart.length / 4) {
+            resizeRows(Math.max(INITIAL_ROWS, textStart.length / 2));
+        }
+        if (slots.length > INITIAL_SLOTS && liveRows * 8 < slots.length) {
+            resizeSlots(slots.length / 2);
+        }
+    }
+
+    // Rewrites the text with only what live rows point at, in row order
+    private void compactText() {
+        int liveLength = textLength - deadBytes;
+        byte[] packed = new byte[Math.max(INITIAL_TEXT, liveLength + liveLength / 2)];
+        int length = 0;
+        for (int row = 0; row < rows; row++) {
+            if (textStart[row] >= 0) {
+                int bytes = (lengths[row] >>> 16) + (lengths[row] & MAX_FIELD_BYTES);
+                System.arraycopy(text, textStart[row], packed, length, bytes);
+                textStart[row] = length;
+                length += bytes;
+            }
+        }
+        text = packed;
+        textLength = length;
+        deadBytes = 0;
+    }
+
+    // Slides the live rows down over the free ones, keeping their order; rows take their
+    // generation along, and views and iterators find their place again
+    private void compactRows() {
+        Cursor[] open;
+        synchronized (cursors) {
+            open = cursors.keySet().toArray(new Cursor[0]);
+        }
+        Arrays.sort(open, Comparator.comparingInt(cursor -> cursor.row));
+        int to = 0;
+        int nextCursor = 0;
+        for (int from = 0; from < rows; from++) {
+            while (nextCursor < open.length && open[nextCursor].row <= from) {
+                open[nextCursor++].row = to;
+            }
+            if (textStart[from] < 0) {
+                continue;
+            }
+            if (to != from) {
+                textStart[to] = textStart[from];
+                lengths[to] = lengths[from];
+                authorIds[to] = authorIds[from];
+                genreIds[to] = genreIds[from];
+                copies[to] = copies[from];
+                versions[to] = versions[from];
+                generations[to] = generations[from];
+            }
+            to++;
+        }
+        while (nextCursor < open.length) {
+            open[nextCursor++].row = to;
+        }
+        for (int row = to; row < rows; row++) {
+            textStart[row] = -1;
+            lengths[row] = 0;
+        }
+        rows = to;
+        freeRows.clear();
+        firstFree = rows;
+        resizeSlots(slots.length);
+    }
+
+    private void resizeRows(int capacity) {
+        textStart = Arrays.copyOf(textStart, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        authorIds = Arrays.copyOf(authorIds, capacity);
+        genreIds = Arrays.copyOf(genreIds, capacity);
+        copies = Arrays.copyOf(copies, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+    }
+
+    // Edits append: a changed title moves the row's id and title to the end of the text, and the
+    // old bytes count as dead until the text is next compacted
+    private void writeTitle(int row, int idLength, byte[] titleBytes) {
+        int start = textStart[row];
+        int oldTitle = lengths[row] & MAX_FIELD_BYTES;
+        if (oldTitle == titleBytes.length && Arrays.equals(text, start + idLength,
+                start + idLength + titleBytes.length, titleBytes, 0, titleBytes.length)) {
+            return;
+        }
+        if (start + idLength != textLength || oldTitle != 0) {
+            ensureText(idLength);
+            System.arraycopy(text, start, text, textLength, idLength);
+            textStart[row] = textLength;
+            textLength += idLength;
+            deadBytes += idLength + oldTitle;
+        }
+        lengths[row] = idLength << 16 | titleBytes.length;
+        appendText(titleBytes);
+    }
+
+    private void appendText(byte[] bytes) {
+        ensureText(bytes.length);
+        System.arraycopy(bytes, 0, text, textLength, bytes.length);
+        textLength += bytes.length;
+    }
+
+    private void ensureText(int extra) {
+        long needed = (long) textLength + extra;
+        if (needed > text.length) {
+            if (needed > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Catalog text is full");
+            }
+            text = Arrays.copyOf(text, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * text.length)));
+        }
+    }
+
+    private int find(byte[] idBytes) {
+        int mask = slots.length - 1;
+        for (int slot = hash(idBytes, 0, idBytes.length) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int row = slots[slot] - 1;
+            int start = textStart[row];
+            if ((lengths[row] >>> 16) == idBytes.length
+                    && Arrays.equals(text, start, start + idBytes.length, idBytes, 0, idBytes.length)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void insertSlot(int row, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = row + 1;
+    }
+
+    // Backward-shift deletion keeps every remaining probe chain unbroken
+    private void removeSlot(int row) {
+        int mask = slots.length - 1;
+        int slot = rowHash(row) & mask;
+        while (slots[slot] != row + 1) {
+            slot = (slot + 1) & mask;
+        }
+        int hole = slot;
+        for (int next = (hole + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = rowHash(slots[next] - 1) & mask;
+            // Move it back unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    private void resizeSlots(int size) {
+        slots = new int[size];
+        for (int row = 0; row < rows; row++) {
+            if (textStart[row] >= 0) {
+                insertSlot(row, rowHash(row));
+            }
+        }
+    }
+
+    private int rowHash(int row) {
+        return hash(text, textStart[row], lengths[row] >>> 16);
+    }
+
+    private static int hash(byte[] bytes, int from, int length) {
+        int h = 1;
+        for (int i = from; i < from + length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    // Lower-casing only touches A-Z in pure ASCII text, so such titles are compared byte by byte
+    private boolean titleContains(int from, int length, String needle, byte[] pattern, boolean asciiNeedle) {
+        int end = from + length;
+        if (asciiNeedle) {
+            boolean ascii = true;
+            for (int i = from; i < end && ascii; i++) {
+                ascii = text[i] >= 0;
+            }
+            if (ascii) {
+                outer:
+                for (int i = from, last = end - pattern.length; i <= last; i++) {
+                    for (int j = 0; j < pattern.length; j++) {
+                        byte b = text[i + j];
+                        if (b >= 'A' && b <= 'Z') {
+                            b += 'a' - 'A';
+                        }
+                        if (b != pattern[j]) {
+                            continue outer;
+                        }
+                    }
+                    return true;
+                }
+                return false;
+            }
+        }
+        return new String(text, from, length, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
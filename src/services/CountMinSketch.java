@@ -0,0 +1,47 @@
+package services;
+
+// Count-Min sketch of long counters with conservative update: an increment only raises the rows
+// that hold the current minimum, which keeps over-estimates from hash collisions lower. Estimates
+// never undercount. Not thread-safe.
+class CountMinSketch {
+
+    private final long[][] rows;
+    private final int mask;
+
+    CountMinSketch(int width) {
+        int size = Integer.highestOneBit(Math.max(64, width - 1)) << 1;
+        this.rows = new long[SketchHashing.ROWS][size];
+        this.mask = size - 1;
+    }
+
+    // Returns the new estimate for the key
+    long add(Object key) {
+        int hash = SketchHashing.spread(key.hashCode());
+        int[] indexes = new int[rows.length];
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < rows.length; row++) {
+            indexes[row] = SketchHashing.indexOf(hash, row, mask);
+            estimate = Math.min(estimate, rows[row][indexes[row]]);
+        }
+        estimate++;
+        for (int row = 0; row < rows.length; row++) {
+            if (rows[row][indexes[row]] < estimate) {
+                rows[row][indexes[row]] = estimate;
+            }
+        }
+        return estimate;
+    }
+
+    long estimate(Object key) {
+        int hash = SketchHashing.spread(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < rows.length; row++) {
+            estimate = Math.min(estimate, rows[row][SketchHashing.indexOf(hash, row, mask)]);
+        }
+        return estimate;
+    }
+
+    long sizeInBytes() {
+        return (long) rows.length * rows[0].length * Long.BYTES;
+    }
+}
@@ -0,0 +1,418 @@
+package services;
+
+import java.util.AbstractMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+// Bounded read-through map. get() on a missing key calls the loader once, however many threads
+// ask at the same time, and keeps the result if the policy admits it.
+// Eviction is W-TinyLFU: new entries land in a small LRU window; entries pushed out of the window
+// only replace a main-space entry if the frequency sketch says they are seen more often. The main
+// space is a segmented LRU (probation, then protected after a second hit). Reads are lock-free and
+// replayed into the policy in batches; writes and eviction take one lock.
+public class EntityCache<K, V> extends AbstractMap<K, V> {
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.80;
+
+    private enum Segment { WINDOW, PROBATION, PROTECTED, REMOVED }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        int weight;
+        Segment segment;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // Doubly linked LRU list; the head is the most recently used entry
+    private static final class AccessOrder<K, V> {
+        final Node<K, V> sentinel = new Node<>(null, null, 0);
+        long weight;
+
+        AccessOrder() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        void addFirst(Node<K, V> node) {
+            node.next = sentinel.next;
+            node.prev = sentinel;
+            sentinel.next.prev = node;
+            sentinel.next = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToFront(Node<K, V> node) {
+            remove(node);
+            addFirst(node);
+        }
+
+        Node<K, V> last() {
+            return sentinel.prev == sentinel ? null : sentinel.prev;
+        }
+    }
+
+    private final Function<K, V> loader;
+    private final ToIntFunction<V> weigher;
+    private final long maxWeight;
+    private final long windowMax;
+    private final long mainMax;
+    private final long protectedMax;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final ArrayBlockingQueue<Node<K, V>> readBuffer = new ArrayBlockingQueue<>(READ_BUFFER_SIZE);
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSegment = new AccessOrder<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // The loader returns null for keys that don't exist; nothing is cached for them
+    public EntityCache(long maxWeight, ToIntFunction<V> weigher, Function<K, V> loader) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maxWeight);
+        }
+        this.loader = loader;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.windowMax = Math.max(1, (long) (maxWeight * WINDOW_SHARE));
+        this.mainMax = maxWeight - windowMax;
+        this.protectedMax = (long) (mainMax * PROTECTED_SHARE);
+        sketch.ensureCapacity(64);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            hits.increment();
+            recordRead(node);
+            return node.value;
+        }
+        misses.increment();
+        return load((K) key);
+    }
+
+    // Resident entries only; never calls the loader
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        return node == null ? null : node.value;
+    }
+
+    // Asks the loader on a miss but keeps nothing, so checking many keys (a bulk import's duplicate
+    // check) neither evicts the working set nor counts as cache traffic
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        return data.containsKey(key) || loader.apply((K) key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return insert(key, value, false);
+    }
+
+    @Override
+    public V remove(Object key) {
+        lock.lock();
+        try {
+            // A load still in flight for this key must not cache what it read
+            loading.remove(key);
+            Node<K, V> node = data.remove(key);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            loading.clear();
+            for (Node<K, V> node : data.values()) {
+                unlink(node);
+            }
+            data.clear();
+            readBuffer.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Number of resident entries
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    // Snapshot of the resident entries
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> entries = new LinkedHashSet<>();
+        data.forEach((key, node) -> entries.add(new SimpleImmutableEntry<>(key, node.value)));
+        return entries;
+    }
+
+    public long weightedSize() {
+        lock.lock();
+        try {
+            return window.weight + probation.weight + protectedSegment.weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long maxWeight() {
+        return maxWeight;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long loadCount() {
+        return loads.sum();
+    }
+
+    public long loadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public double averageLoadMillis() {
+        long count = loads.sum() + loadFailures.sum();
+        return count == 0 ? 0 : loadNanos.sum() / 1_000_000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entries, weight %d/%d, hit rate %.1f%% (%d hits, %d misses), "
+                        + "%d loads (%d failed, %.2f ms avg), %d evictions",
+                size(), weightedSize(), maxWeight, hitRate() * 100, hitCount(), missCount(),
+                loadCount(), loadFailureCount(), averageLoadMillis(), evictionCount());
+    }
+
+    private V load(K key) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            // Someone else is already loading this key; share their result
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            // Loaded and inserted between our miss and claiming the load
+            loading.remove(key, mine);
+            mine.complete(node.value);
+            return node.value;
+        }
+
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            loadNanos.add(System.nanoTime() - start);
+            loading.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        loads.increment();
+        loadNanos.add(System.nanoTime() - start);
+        // Only cache if nobody invalidated the key while we were reading it
+        if (value != null && loading.remove(key, mine)) {
+            insert(key, value, true);
+        } else {
+            loading.remove(key, mine);
+        }
+        mine.complete(value);
+        return value;
+    }
+
+    private V insert(K key, V value, boolean onlyIfAbsent) {
+        int weight = Math.max(0, weigher.applyAsInt(value));
+        lock.lock();
+        try {
+            drainReadBuffer();
+            sketch.increment(key);
+            Node<K, V> existing = data.get(key);
+            if (existing != null) {
+                V previous = existing.value;
+                if (!onlyIfAbsent) {
+                    existing.value = value;
+                    reweigh(existing, weight);
+                    onAccess(existing);
+                    evict();
+                }
+                return previous;
+            }
+            if (weight > maxWeight) {
+                // Could never fit; hand it back uncached
+                return null;
+            }
+            Node<K, V> node = new Node<>(key, value, weight);
+            data.put(key, node);
+            node.segment = Segment.WINDOW;
+            window.addFirst(node);
+            sketch.ensureCapacity(data.size());
+            evict();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordRead(Node<K, V> node) {
+        // Lossy: a full buffer just drops the access, which only costs a little policy accuracy
+        boolean buffered = readBuffer.offer(node);
+        if ((!buffered || readBuffer.size() >= READ_BUFFER_SIZE / 2) && lock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffer() {
+        Node<K, V> node;
+        while ((node = readBuffer.poll()) != null) {
+            sketch.increment(node.key);
+            onAccess(node);
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW -> window.moveToFront(node);
+            case PROBATION -> {
+                // Second hit: promote, and demote the protected tail if that overflows it
+                probation.remove(node);
+                node.segment = Segment.PROTECTED;
+                protectedSegment.addFirst(node);
+                while (protectedSegment.weight > protectedMax) {
+                    Node<K, V> demoted = protectedSegment.last();
+                    protectedSegment.remove(demoted);
+                    demoted.segment = Segment.PROBATION;
+                    probation.addFirst(demoted);
+                }
+            }
+            case PROTECTED -> protectedSegment.moveToFront(node);
+            case REMOVED -> { }
+        }
+    }
+
+    private void evict() {
+        while (window.weight > windowMax) {
+            Node<K, V> candidate = window.last();
+            window.remove(candidate);
+            admit(candidate);
+        }
+        // A replaced value can grow past the bound without passing through the window
+        while (window.weight + probation.weight + protectedSegment.weight > maxWeight) {
+            Node<K, V> victim = probation.last();
+            if (victim == null) victim = protectedSegment.last();
+            if (victim == null) victim = window.last();
+            evictNode(victim);
+        }
+    }
+
+    // The TinyLFU filter: a candidate from the window displaces main-space victims only while it
+    // is more popular than each of them
+    private void admit(Node<K, V> candidate) {
+        candidate.segment = null;
+        int candidateFrequency = sketch.frequency(candidate.key);
+        while (probation.weight + protectedSegment.weight + candidate.weight > mainMax) {
+            Node<K, V> victim = probation.last();
+            if (victim == null) victim = protectedSegment.last();
+            if (victim == null) break;
+            if (candidateFrequency > sketch.frequency(victim.key)) {
+                evictNode(victim);
+            } else {
+                evictNode(candidate);
+                return;
+            }
+        }
+        candidate.segment = Segment.PROBATION;
+        probation.addFirst(candidate);
+    }
+
+    private void evictNode(Node<K, V> node) {
+        unlink(node);
+        data.remove(node.key, node);
+        evictions.increment();
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.segment == Segment.WINDOW) window.remove(node);
+        else if (node.segment == Segment.PROBATION) probation.remove(node);
+        else if (node.segment == Segment.PROTECTED) protectedSegment.remove(node);
+        node.segment = Segment.REMOVED;
+    }
+
+    private void reweigh(Node<K, V> node, int weight) {
+        long delta = weight - node.weight;
+        node.weight = weight;
+        if (node.segment == Segment.WINDOW) window.weight += delta;
+        else if (node.segment == Segment.PROBATION) probation.weight += delta;
+        else if (node.segment == Segment.PROTECTED) protectedSegment.weight += delta;
+    }
+}
@@ -0,0 +1,64 @@
+package services;
+
+// Count-Min sketch of 4-bit counters used to estimate how often a key was seen recently.
+// Four counters per key, one per row, all packed into the same long; the estimate is the smallest.
+// Every counter is halved once the number of increments reaches ten times the table width, so old
+// popularity fades. Not thread-safe.
+class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private long[] table = new long[0];
+    private int tableMask;
+    private int sampleSize;
+    private int additions;
+
+    // Sizes the table for roughly this many distinct keys; growing it forgets the history
+    void ensureCapacity(long expectedKeys) {
+        int size = (int) Math.min(1 << 30, Long.highestOneBit(Math.max(64, expectedKeys - 1)) << 1);
+        if (table.length >= size) {
+            return;
+        }
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = 10 * size;
+        additions = 0;
+    }
+
+    int frequency(Object key) {
+        int hash = SketchHashing.spread(key.hashCode());
+        int frequency = 15;
+        for (int row = 0; row < SketchHashing.ROWS; row++) {
+            long counters = table[SketchHashing.indexOf(hash, row, tableMask)];
+            frequency = Math.min(frequency, (int) ((counters >>> offsetOf(hash, row)) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = SketchHashing.spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < SketchHashing.ROWS; row++) {
+            int index = SketchHashing.indexOf(hash, row, tableMask);
+            int offset = offsetOf(hash, row);
+            if (((table[index] >>> offset) & 0xF) != 0xF) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    // Each row owns four of the sixteen counters in a long
+    private static int offsetOf(int hash, int row) {
+        return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+    }
+}
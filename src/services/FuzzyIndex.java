@@ -0,0 +1,183 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Typo-tolerant lookup over the words of the given fields. Distinct words live in a BK-tree, each
+// with a posting set of the items using it. Every query word must match some word of an item
+// within the edit budget; items are ranked by the summed distance of their best matches.
+public class FuzzyIndex<T> {
+    // Words no item uses any more stay in the tree until they outnumber the live ones
+    private static final int MIN_DEAD_TERMS_FOR_REBUILD = 1024;
+
+    private final Function<T, String> idGetter;
+    private final List<Function<T, String>> fields;
+
+    private final Map<String, T> items = new HashMap<>();
+    private final Map<String, String[]> termsById = new HashMap<>();
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    private BKTree tree = new BKTree();
+    private int deadTerms;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FuzzyIndex(Function<T, String> idGetter, List<Function<T, String>> fields) {
+        this.idGetter = idGetter;
+        this.fields = fields;
+    }
+
+    public void add(T item) {
+        lock.writeLock().lock();
+        try {
+            String id = idGetter.apply(item);
+            removeTerms(id);
+            String[] terms = termsOf(item);
+            items.put(id, item);
+            termsById.put(id, terms);
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> {
+                    if (!tree.add(t)) {
+                        deadTerms--; // back in use
+                    }
+                    return new HashSet<>();
+                }).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(id);
+            items.remove(id);
+            if (deadTerms >= MIN_DEAD_TERMS_FOR_REBUILD && deadTerms > postings.size()) {
+                rebuild();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ranked best first, at most limit results. A negative maxDistance scales the budget with the
+    // length of each query word.
+    public List<T> search(String query, int maxDistance, int limit) {
+        String[] queryTerms = tokensOf(query);
+        if (queryTerms.length == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> scores = null;
+            for (String queryTerm : queryTerms) {
+                int budget = maxDistance < 0 ? defaultDistance(queryTerm) : maxDistance;
+                Map<String, Integer> best = new HashMap<>();
+                tree.search(queryTerm, budget, (term, distance) -> {
+                    Set<String> ids = postings.get(term);
+                    if (ids != null) {
+                        for (String id : ids) {
+                            best.merge(id, distance, Math::min);
+                        }
+                    }
+                });
+                if (scores == null) {
+                    scores = best;
+                } else {
+                    Map<String, Integer> previous = scores;
+                    best.keySet().retainAll(previous.keySet());
+                    best.replaceAll((id, distance) -> distance + previous.get(id));
+                    scores = best;
+                }
+                if (scores.isEmpty()) {
+                    return new ArrayList<>();
+                }
+            }
+
+            List<Map.Entry<String, Integer>> ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+            List<T> results = new ArrayList<>(Math.min(limit, ranked.size()));
+            for (int i = 0; i < ranked.size() && results.size() < limit; i++) {
+                results.add(items.get(ranked.get(i).getKey()));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return items.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeTerms(String id) {
+        String[] terms = termsById.remove(id);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Set<String> ids = postings.get(term);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                postings.remove(term);
+                deadTerms++;
+            }
+        }
+    }
+
+    private void rebuild() {
+        BKTree fresh = new BKTree();
+        for (String term : postings.keySet()) {
+            fresh.add(term);
+        }
+        tree = fresh;
+        deadTerms = 0;
+    }
+
+    private String[] termsOf(T item) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (Function<T, String> field : fields) {
+            String value = field.apply(item);
+            if (value != null) {
+                terms.addAll(List.of(tokensOf(value)));
+            }
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    private static String[] tokensOf(String text) {
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    // Short words must match exactly, otherwise almost everything would be within reach
+    private static int defaultDistance(String term) {
+        if (term.length() <= 2) return 0;
+        if (term.length() <= 5) return 1;
+        return 2;
+    }
+}
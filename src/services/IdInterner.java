@@ -0,0 +1,53 @@
+package services;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Assigns each distinct string id a dense int (0, 1, 2, ...) for the lifetime of the process.
+// Lookups in both directions are lock-free; only handing out a new int takes the lock.
+public class IdInterner {
+    public static final int NOT_FOUND = -1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private volatile int count;
+
+    public int intern(String id) {
+        Integer existing = ids.get(id);
+        return existing != null ? existing : assign(id);
+    }
+
+    // NOT_FOUND for ids that were never interned
+    public int lookup(String id) {
+        Integer existing = ids.get(id);
+        return existing != null ? existing : NOT_FOUND;
+    }
+
+    public String name(int id) {
+        // count is read first: names is always written before count, so this array covers it
+        int known = count;
+        String[] current = names;
+        return id >= 0 && id < known ? current[id] : null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private synchronized int assign(String id) {
+        Integer existing = ids.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        int next = count;
+        if (next == names.length) {
+            names = Arrays.copyOf(names, next * 2);
+        }
+        names[next] = id;
+        // Publish the name before the id can be looked up or counted
+        count = next + 1;
+        ids.put(id, next);
+        return next;
+    }
+}
@@ -0,0 +1,45 @@
+package services;
+
+import interfaces.SearchEngine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Scans the live collection on every query; nothing to maintain on add/remove
+public class LinearSearchEngine<T> implements SearchEngine<T> {
+    private final Supplier<Collection<T>> source;
+    private final List<Function<T, String>> fields;
+
+    public LinearSearchEngine(Supplier<Collection<T>> source, List<Function<T, String>> fields) {
+        this.source = source;
+        this.fields = fields;
+    }
+
+    @Override
+    public void add(T item) {
+    }
+
+    @Override
+    public void remove(String id) {
+    }
+
+    @Override
+    public List<T> search(String query) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        List<T> results = new ArrayList<>();
+        for (T item : source.get()) {
+            for (Function<T, String> field : fields) {
+                String value = field.apply(item);
+                if (value != null && value.toLowerCase(Locale.ROOT).contains(needle)) {
+                    results.add(item);
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+}
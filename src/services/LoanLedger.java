@@ -0,0 +1,164 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Who has borrowed what, in both directions. User and book ids are interned to dense ints and each
+// side keeps one compressed bitmap per id, so membership is a bitmap probe and per-user or per-book
+// listings never scan other loans. Each bitmap is guarded by its own monitor.
+public class LoanLedger {
+    private final IdInterner userIds = new IdInterner();
+    private final IdInterner bookIds = new IdInterner();
+    private final BitmapTable booksByUser = new BitmapTable();
+    private final BitmapTable usersByBook = new BitmapTable();
+
+    // False if the loan was already recorded
+    public boolean add(String userId, String bookId) {
+        int user = userIds.intern(userId);
+        int book = bookIds.intern(bookId);
+        RoaringBitmap books = booksByUser.getOrCreate(user);
+        RoaringBitmap users = usersByBook.getOrCreate(book);
+        // Always user side first, then book side, so both directions change together
+        synchronized (books) {
+            if (!books.add(book)) {
+                return false;
+            }
+            synchronized (users) {
+                users.add(user);
+            }
+        }
+        return true;
+    }
+
+    // False if there was no such loan
+    public boolean remove(String userId, String bookId) {
+        int user = userIds.lookup(userId);
+        int book = bookIds.lookup(bookId);
+        RoaringBitmap books = booksByUser.get(user);
+        RoaringBitmap users = usersByBook.get(book);
+        if (books == null || users == null) {
+            return false;
+        }
+        synchronized (books) {
+            if (!books.remove(book)) {
+                return false;
+            }
+            synchronized (users) {
+                users.remove(user);
+            }
+        }
+        return true;
+    }
+
+    // Drops every loan of a deleted book (the database cascades the same way)
+    public void removeBook(String bookId) {
+        for (String userId : borrowersOf(bookId)) {
+            remove(userId, bookId);
+        }
+    }
+
+    public boolean contains(String userId, String bookId) {
+        RoaringBitmap books = booksByUser.get(userIds.lookup(userId));
+        int book = bookIds.lookup(bookId);
+        if (books == null || book == IdInterner.NOT_FOUND) {
+            return false;
+        }
+        synchronized (books) {
+            return books.contains(book);
+        }
+    }
+
+    public List<String> booksOf(String userId) {
+        return names(booksByUser.get(userIds.lookup(userId)), bookIds);
+    }
+
+    public List<String> borrowersOf(String bookId) {
+        return names(usersByBook.get(bookIds.lookup(bookId)), userIds);
+    }
+
+    public int countBorrowedBy(String userId) {
+        return cardinality(booksByUser.get(userIds.lookup(userId)));
+    }
+
+    public int countBorrowersOf(String bookId) {
+        return cardinality(usersByBook.get(bookIds.lookup(bookId)));
+    }
+
+    public long size() {
+        long loans = 0;
+        for (int user = 0; user < userIds.size(); user++) {
+            loans += cardinality(booksByUser.get(user));
+        }
+        return loans;
+    }
+
+    // Approximate bitmap memory for both directions
+    public long sizeInBytes() {
+        return booksByUser.sizeInBytes() + usersByBook.sizeInBytes();
+    }
+
+    private static List<String> names(RoaringBitmap bitmap, IdInterner interner) {
+        if (bitmap == null) {
+            return List.of();
+        }
+        int[] ids;
+        synchronized (bitmap) {
+            ids = bitmap.toArray();
+        }
+        List<String> names = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            names.add(interner.name(id));
+        }
+        return names;
+    }
+
+    private static int cardinality(RoaringBitmap bitmap) {
+        if (bitmap == null) {
+            return 0;
+        }
+        synchronized (bitmap) {
+            return bitmap.cardinality();
+        }
+    }
+
+    // Bitmaps indexed by interned id; grows under a lock, read without one
+    private static class BitmapTable {
+        private volatile RoaringBitmap[] bitmaps = new RoaringBitmap[64];
+
+        RoaringBitmap get(int id) {
+            RoaringBitmap[] current = bitmaps;
+            return id >= 0 && id < current.length ? current[id] : null;
+        }
+
+        RoaringBitmap getOrCreate(int id) {
+            RoaringBitmap existing = get(id);
+            return existing != null ? existing : create(id);
+        }
+
+        private synchronized RoaringBitmap create(int id) {
+            RoaringBitmap[] current = bitmaps;
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, id + 1));
+            } else if (current[id] != null) {
+                return current[id];
+            }
+            current[id] = new RoaringBitmap();
+            // Republish so readers that only see the volatile field see the new slot
+            bitmaps = current;
+            return current[id];
+        }
+
+        synchronized long sizeInBytes() {
+            long bytes = 0;
+            for (RoaringBitmap bitmap : bitmaps) {
+                if (bitmap != null) {
+                    synchronized (bitmap) {
+                        bytes += bitmap.sizeInBytes();
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+}
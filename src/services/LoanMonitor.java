@@ -0,0 +1,157 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Due dates of open loans, each parked in a timing wheel until it falls due. Borrowing, renewing
+// and returning schedule, move or cancel one timer; a ticker thread advances the wheel and reports
+// each loan once when it becomes overdue. Nothing ever scans all open loans.
+public class LoanMonitor implements AutoCloseable {
+    // Identified by user and book; the due date moves on renewal
+    public static final class Loan {
+        private final String userId;
+        private final String bookId;
+        private volatile long dueAtMillis;
+
+        Loan(String userId, String bookId, long dueAtMillis) {
+            this.userId = userId;
+            this.bookId = bookId;
+            this.dueAtMillis = dueAtMillis;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getBookId() {
+            return bookId;
+        }
+
+        public long getDueAtMillis() {
+            return dueAtMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Loan other && userId.equals(other.userId) && bookId.equals(other.bookId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * userId.hashCode() + bookId.hashCode();
+        }
+    }
+
+    private final long tickMillis;
+    private final Consumer<Loan> onOverdue;
+    private final TimingWheel<Loan> wheel;
+    private final Map<Loan, TimingWheel.Timeout<Loan>> open = new ConcurrentHashMap<>();
+    private final Map<Loan, Loan> overdue = new ConcurrentHashMap<>();
+    private ScheduledExecutorService ticker;
+
+    // onOverdue runs on the ticker thread
+    public LoanMonitor(long tickMillis, Consumer<Loan> onOverdue) {
+        this.tickMillis = tickMillis;
+        this.onOverdue = onOverdue;
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+    }
+
+    // A new loan, or a renewal of an open one (which also clears its overdue state)
+    public void track(String userId, String bookId, long dueAtMillis) {
+        Loan key = new Loan(userId, bookId, dueAtMillis);
+        open.compute(key, (k, timeout) -> {
+            overdue.remove(k);
+            if (timeout == null) {
+                return wheel.schedule(k, dueAtMillis);
+            }
+            timeout.getPayload().dueAtMillis = dueAtMillis;
+            wheel.reschedule(timeout, dueAtMillis);
+            return timeout;
+        });
+    }
+
+    public boolean untrack(String userId, String bookId) {
+        boolean[] removed = new boolean[1];
+        open.computeIfPresent(new Loan(userId, bookId, 0), (k, timeout) -> {
+            wheel.cancel(timeout);
+            overdue.remove(k);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    // Null when the loan isn't tracked
+    public Loan find(String userId, String bookId) {
+        TimingWheel.Timeout<Loan> timeout = open.get(new Loan(userId, bookId, 0));
+        return timeout == null ? null : timeout.getPayload();
+    }
+
+    public boolean isOverdue(String userId, String bookId) {
+        return overdue.containsKey(new Loan(userId, bookId, 0));
+    }
+
+    // Longest overdue first
+    public List<Loan> overdueLoans() {
+        List<Loan> loans = new ArrayList<>(overdue.values());
+        loans.sort(Comparator.comparingLong(Loan::getDueAtMillis).thenComparing(Loan::getUserId)
+                .thenComparing(Loan::getBookId));
+        return loans;
+    }
+
+    public int getOpenCount() {
+        return open.size();
+    }
+
+    public int getOverdueCount() {
+        return overdue.size();
+    }
+
+    // Moves the wheel to nowMillis and reports what fell due; returns how many timers fired
+    public int advance(long nowMillis) {
+        return wheel.advanceTo(nowMillis, loan -> markOverdue(loan, nowMillis));
+    }
+
+    public synchronized void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loan-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                advance(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                System.err.println("Error checking due dates: " + e.getMessage());
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    // The loan may have been returned or renewed between firing and getting here
+    private void markOverdue(Loan loan, long nowMillis) {
+        boolean[] fired = new boolean[1];
+        open.computeIfPresent(loan, (k, timeout) -> {
+            if (timeout.getPayload() == loan && loan.dueAtMillis <= nowMillis) {
+                fired[0] = overdue.putIfAbsent(k, loan) == null;
+            }
+            return timeout;
+        });
+        if (fired[0]) {
+            onOverdue.accept(loan);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package services;
+
+import interfaces.SearchEngine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+// Inverted index over lowercase trigrams (substring queries) and whole tokens (short prefix queries).
+// Candidates come from intersecting posting lists and are then checked against the stored text,
+// so for queries of three or more characters results match the linear engine exactly.
+public class NGramSearchEngine<T> implements SearchEngine<T> {
+    public static final int GRAM = 3;
+
+    private final Function<T, String> idGetter;
+    private final List<Function<T, String>> fields;
+
+    private final Map<String, T> items = new ConcurrentHashMap<>();
+    private final Map<String, String[]> normalizedText = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> gramPostings = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Set<String>> tokenPostings = new ConcurrentSkipListMap<>();
+
+    public NGramSearchEngine(Function<T, String> idGetter, List<Function<T, String>> fields) {
+        this.idGetter = idGetter;
+        this.fields = fields;
+    }
+
+    @Override
+    public synchronized void add(T item) {
+        String id = idGetter.apply(item);
+        if (items.containsKey(id)) {
+            remove(id);
+        }
+        String[] text = new String[fields.size()];
+        for (int i = 0; i < text.length; i++) {
+            String value = fields.get(i).apply(item);
+            text[i] = value == null ? "" : value.toLowerCase(Locale.ROOT);
+        }
+        items.put(id, item);
+        normalizedText.put(id, text);
+        for (String gram : gramsOf(text)) {
+            gramPostings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        for (String token : tokensOf(text)) {
+            tokenPostings.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String id) {
+        String[] text = normalizedText.remove(id);
+        items.remove(id);
+        if (text == null) {
+            return;
+        }
+        for (String gram : gramsOf(text)) {
+            removePosting(gramPostings, gram, id);
+        }
+        for (String token : tokensOf(text)) {
+            removePosting(tokenPostings, token, id);
+        }
+    }
+
+    @Override
+    public List<T> search(String query) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        if (needle.isEmpty()) {
+            return new ArrayList<>(items.values());
+        }
+
+        Set<String> candidates = needle.length() >= GRAM ? substringCandidates(needle) : prefixCandidates(needle);
+        List<T> results = new ArrayList<>();
+        for (String id : candidates) {
+            String[] text = normalizedText.get(id);
+            T item = items.get(id);
+            if (text != null && item != null && matches(text, needle)) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    private Set<String> substringCandidates(String needle) {
+        List<Set<String>> postings = new ArrayList<>();
+        for (String gram : gramsOf(needle)) {
+            Set<String> posting = gramPostings.get(gram);
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            postings.add(posting);
+        }
+        // Intersect smallest-first so the working set only shrinks
+        postings.sort(Comparator.comparingInt(Set::size));
+        Set<String> result = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.retainAll(postings.get(i));
+        }
+        return result;
+    }
+
+    // Queries shorter than a trigram match word prefixes, e.g. "hp" won't hit "the hobbit" mid-word
+    private Set<String> prefixCandidates(String prefix) {
+        Set<String> result = new HashSet<>();
+        for (Set<String> posting : tokenPostings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            result.addAll(posting);
+        }
+        return result;
+    }
+
+    private static boolean matches(String[] text, String needle) {
+        for (String value : text) {
+            if (value.contains(needle)) return true;
+        }
+        return false;
+    }
+
+    private static Set<String> gramsOf(String... text) {
+        Set<String> grams = new HashSet<>();
+        for (String value : text) {
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+
+    private static Set<String> tokensOf(String[] text) {
+        Set<String> tokens = new HashSet<>();
+        for (String value : text) {
+            for (String token : value.split("\\W+")) {
+                if (!token.isEmpty()) tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static void removePosting(Map<String, Set<String>> postings, String key, String id) {
+        postings.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Live borrow statistics kept in fixed memory, fed by every successful borrow and return.
+// Per-book counts come from a Count-Min sketch; the heavy hitters are the books with the highest
+// estimates, held in a small candidate set a few times larger than the top-K asked for. Genres are
+// counted exactly (there are few of them), and borrows/returns per minute sit in a ring covering
+// the last day. Counts start at zero when the app starts.
+public class PopularityTracker {
+    private static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int BUCKETS = 24 * 60;
+    private static final int CANDIDATES_PER_TOP_ENTRY = 4;
+
+    private final int topK;
+    private final int maxCandidates;
+    private final CountMinSketch sketch;
+    private final Map<String, Long> candidates = new HashMap<>();
+    private final Map<String, long[]> genres = new HashMap<>(); // {borrows, returns}
+    private final long[] bucketStart = new long[BUCKETS];
+    private final long[] bucketBorrows = new long[BUCKETS];
+    private final long[] bucketReturns = new long[BUCKETS];
+    private long totalBorrows;
+    private long totalReturns;
+
+    public PopularityTracker(int topK, int sketchWidth) {
+        if (topK < 1) {
+            throw new IllegalArgumentException("Top-K must be positive: " + topK);
+        }
+        this.topK = topK;
+        this.maxCandidates = topK * CANDIDATES_PER_TOP_ENTRY;
+        this.sketch = new CountMinSketch(sketchWidth);
+    }
+
+    public synchronized void recordBorrow(String bookId, String genre) {
+        totalBorrows++;
+        long estimate = sketch.add(bookId);
+        if (candidates.containsKey(bookId) || candidates.size() < maxCandidates) {
+            candidates.put(bookId, estimate);
+        } else {
+            Map.Entry<String, Long> weakest = null;
+            for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+                if (weakest == null || candidate.getValue() < weakest.getValue()) {
+                    weakest = candidate;
+                }
+            }
+            if (estimate > weakest.getValue()) {
+                candidates.remove(weakest.getKey());
+                candidates.put(bookId, estimate);
+            }
+        }
+        genreCounts(genre)[0]++;
+        bucketBorrows[bucketFor(System.currentTimeMillis())]++;
+    }
+
+    public synchronized void recordReturn(String bookId, String genre) {
+        totalReturns++;
+        genreCounts(genre)[1]++;
+        bucketReturns[bucketFor(System.currentTimeMillis())]++;
+    }
+
+    // Most borrowed books first, as {bookId, estimated borrows}
+    public synchronized List<Map.Entry<String, Long>> topBooks() {
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(candidates.size());
+        for (String bookId : candidates.keySet()) {
+            ranked.add(Map.entry(bookId, sketch.estimate(bookId)));
+        }
+        ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        return new ArrayList<>(ranked.subList(0, Math.min(topK, ranked.size())));
+    }
+
+    // Genre -> {borrows, returns}, sorted by genre
+    public synchronized Map<String, long[]> genreCounts() {
+        Map<String, long[]> copy = new TreeMap<>();
+        genres.forEach((genre, counts) -> copy.put(genre, counts.clone()));
+        return copy;
+    }
+
+    public synchronized long borrowsInLast(long millis) {
+        return sumWindow(bucketBorrows, millis);
+    }
+
+    public synchronized long returnsInLast(long millis) {
+        return sumWindow(bucketReturns, millis);
+    }
+
+    public synchronized long getTotalBorrows() {
+        return totalBorrows;
+    }
+
+    public synchronized long getTotalReturns() {
+        return totalReturns;
+    }
+
+    public long sizeInBytes() {
+        return sketch.sizeInBytes() + 3L * BUCKETS * Long.BYTES;
+    }
+
+    private long[] genreCounts(String genre) {
+        return genres.computeIfAbsent(genre == null ? "" : genre, g -> new long[2]);
+    }
+
+    // Reuses the slot of a bucket that has aged out of the ring
+    private int bucketFor(long now) {
+        long start = now - now % BUCKET_MILLIS;
+        int index = (int) ((start / BUCKET_MILLIS) % BUCKETS);
+        if (bucketStart[index] != start) {
+            bucketStart[index] = start;
+            bucketBorrows[index] = 0;
+            bucketReturns[index] = 0;
+        }
+        return index;
+    }
+
+    private long sumWindow(long[] counts, long millis) {
+        long now = System.currentTimeMillis();
+        long oldest = now - now % BUCKET_MILLIS - Math.min(millis, BUCKETS * BUCKET_MILLIS) + BUCKET_MILLIS;
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketStart[i] >= oldest && bucketStart[i] <= now) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+}
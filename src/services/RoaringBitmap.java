@@ -0,0 +1,239 @@
+package services;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Compressed set of non-negative ints. Values are split by their high 16 bits into containers:
+// sparse ones keep a sorted char[] (2 bytes per value), dense ones a fixed 8KB bitset. A container
+// switches form when it crosses 4096 values, which is where the two cost the same.
+// Not thread-safe; callers synchronize.
+public class RoaringBitmap {
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size; // number of containers in use
+    private int cardinality;
+
+    public boolean add(int value) {
+        char key = highBits(value);
+        int index = findContainer(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        if (!container.contains(lowBits(value))) {
+            containers[index] = container.add(lowBits(value));
+            cardinality++;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean remove(int value) {
+        int index = findContainer(highBits(value));
+        if (index < 0 || !containers[index].contains(lowBits(value))) {
+            return false;
+        }
+        Container container = containers[index].remove(lowBits(value));
+        cardinality--;
+        if (container.cardinality() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = container;
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int index = findContainer(highBits(value));
+        return index >= 0 && containers[index].contains(lowBits(value));
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    // Ascending order
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality];
+        int[] next = {0};
+        forEach(value -> values[next[0]++] = value);
+        return values;
+    }
+
+    // Rough heap footprint of the containers, for sizing
+    public long sizeInBytes() {
+        long bytes = keys.length * 2L + containers.length * 4L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private static char highBits(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        return (char) (value >>> 16);
+    }
+
+    private static char lowBits(int value) {
+        return (char) value;
+    }
+
+    private int findContainer(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private interface Container {
+        boolean contains(char value);
+        // Both return the container to keep, which may be a converted one
+        Container add(char value);
+        Container remove(char value);
+        int cardinality();
+        void forEach(int base, IntConsumer action);
+        long sizeInBytes();
+    }
+
+    private static class ArrayContainer implements Container {
+        private char[] values = new char[4];
+        private int count;
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, count, value) >= 0;
+        }
+
+        @Override
+        public Container add(char value) {
+            if (count == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            int index = -Arrays.binarySearch(values, 0, count, value) - 1;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, count * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            values[index] = value;
+            count++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, count, value);
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            count--;
+            return this;
+        }
+
+        @Override
+        public int cardinality() {
+            return count;
+        }
+
+        @Override
+        public void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < count; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return 16 + values.length * 2L;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < count; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+        private final long[] words = new long[1024];
+        private int count;
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public Container add(char value) {
+            words[value >>> 6] |= 1L << value;
+            count++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char value) {
+            words[value >>> 6] &= ~(1L << value);
+            count--;
+            return count <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+
+        @Override
+        public int cardinality() {
+            return count;
+        }
+
+        @Override
+        public void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        public long sizeInBytes() {
+            return 16 + words.length * 8L;
+        }
+
+        private ArrayContainer toArrayContainer() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[count];
+            forEach(0, value -> array.values[array.count++] = (char) value);
+            return array;
+        }
+    }
+}
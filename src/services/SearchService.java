@@ -1,10 +1,24 @@
 package services;
 
+import interfaces.SearchEngine;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
-class SearchService<T> {
+public class SearchService<T> {
+    private final SearchEngine<T> engine;
+    private final FuzzyIndex<T> fuzzyIndex; // null when typo-tolerant search isn't available
+
+    public SearchService(SearchEngine<T> engine) {
+        this(engine, null);
+    }
+
+    public SearchService(SearchEngine<T> engine, FuzzyIndex<T> fuzzyIndex) {
+        this.engine = engine;
+        this.fuzzyIndex = fuzzyIndex;
+    }
+
     public T searchById(List<T> list, String id, Function<T, String> idGetter) {
         for (T item : list) {
             if (idGetter.apply(item).equals(id)) return item;
@@ -14,11 +28,44 @@ class SearchService<T> {
 
     public List<T> searchByName(List<T> list, String name, Function<T, String> nameGetter) {
         List<T> results = new ArrayList<>();
+        String needle = name.toLowerCase();
         for (T item : list) {
-            if (nameGetter.apply(item).toLowerCase().contains(name.toLowerCase())) {
+            if (nameGetter.apply(item).toLowerCase().contains(needle)) {
                 results.add(item);
             }
         }
         return results;
     }
-}
\ No newline at end of file
+
+    // Engine-backed queries over everything registered with add/update/remove
+    public List<T> search(String query) {
+        return engine.search(query);
+    }
+
+    // Typo-tolerant query ranked by edit distance, closest first
+    public List<T> fuzzySearch(String query, int limit) {
+        return fuzzyIndex == null ? new ArrayList<>() : fuzzyIndex.search(query, -1, limit);
+    }
+
+    public boolean supportsFuzzySearch() {
+        return fuzzyIndex != null;
+    }
+
+    public void add(T item) {
+        engine.add(item);
+        if (fuzzyIndex != null) fuzzyIndex.add(item);
+    }
+
+    public void update(T item, String id) {
+        engine.update(item, id);
+        if (fuzzyIndex != null) {
+            fuzzyIndex.remove(id);
+            fuzzyIndex.add(item);
+        }
+    }
+
+    public void remove(String id) {
+        engine.remove(id);
+        if (fuzzyIndex != null) fuzzyIndex.remove(id);
+    }
+}
@@ -0,0 +1,25 @@
+package services;
+
+// Hashing shared by the Count-Min sketches: one seed per row, and a key hash spread so that the
+// rows' indexes don't collide together.
+final class SketchHashing {
+    static final int ROWS = 4;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private SketchHashing() {
+    }
+
+    static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    // The mask is the table size minus one; sizes are powers of two
+    static int indexOf(int hash, int row, int mask) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+}
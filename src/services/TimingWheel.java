@@ -0,0 +1,167 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel: eleven levels of 64 slots, level l covering 64^(l+1) ticks. A timeout
+// goes into the lowest level whose span reaches its deadline and, as the clock passes each
+// higher-level slot, cascades down a level until it fires from level 0. Scheduling and cancelling
+// are O(1) (a doubly linked bucket per slot); advancing costs one slot per tick plus each timeout's
+// few cascades, however many timeouts are pending. Deadlines are rounded up to whole ticks.
+public class TimingWheel<T> {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = (Long.SIZE + WHEEL_BITS - 1) / WHEEL_BITS;
+
+    public static final class Timeout<T> {
+        private final T payload;
+        private long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int level = -1; // -1 while not scheduled
+
+        private Timeout(T payload) {
+            this.payload = payload;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timeout<T>[][] buckets; // sentinel heads of circular lists
+    private final int[] levelSizes = new int[LEVELS];
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        this.buckets = (Timeout<T>[][]) new Timeout<?>[LEVELS][WHEEL_SIZE];
+        for (Timeout<T>[] level : buckets) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                Timeout<T> head = new Timeout<>(null);
+                head.prev = head;
+                head.next = head;
+                level[slot] = head;
+            }
+        }
+    }
+
+    // A deadline that has already passed fires on the next tick
+    public synchronized Timeout<T> schedule(T payload, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(payload);
+        timeout.deadlineTick = ceilDiv(deadlineMillis, tickMillis);
+        place(timeout, currentTick + 1);
+        size++;
+        return timeout;
+    }
+
+    // Moves a pending (or already fired) timeout to a new deadline
+    public synchronized void reschedule(Timeout<T> timeout, long deadlineMillis) {
+        if (timeout.level >= 0) {
+            unlink(timeout);
+        } else {
+            size++;
+        }
+        timeout.deadlineTick = ceilDiv(deadlineMillis, tickMillis);
+        place(timeout, currentTick + 1);
+    }
+
+    // False if it had already fired or been cancelled
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.level < 0) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    // Fires everything due by nowMillis, in deadline-tick order; the callback runs outside the lock
+    public int advanceTo(long nowMillis, Consumer<T> expired) {
+        List<T> fired = new ArrayList<>();
+        synchronized (this) {
+            long nowTick = nowMillis / tickMillis;
+            while (currentTick < nowTick) {
+                if (size == 0) {
+                    currentTick = nowTick;
+                    break;
+                }
+                if (levelSizes[0] == 0) {
+                    // Nothing can fire before the next level-1 boundary; skip the empty slots
+                    currentTick = Math.min(nowTick, currentTick | WHEEL_MASK);
+                    if (currentTick == nowTick) break;
+                }
+                long tick = ++currentTick;
+                int top = 0;
+                while (top + 1 < LEVELS && (tick & ((1L << (WHEEL_BITS * (top + 1))) - 1)) == 0) {
+                    top++;
+                }
+                for (int level = top; level >= 1; level--) {
+                    cascade(level, (int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                }
+                Timeout<T> head = buckets[0][(int) tick & WHEEL_MASK];
+                while (head.next != head) {
+                    Timeout<T> timeout = head.next;
+                    unlink(timeout);
+                    size--;
+                    fired.add(timeout.payload);
+                }
+            }
+        }
+        for (T payload : fired) {
+            expired.accept(payload);
+        }
+        return fired.size();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout<T> head = buckets[level][slot];
+        while (head.next != head) {
+            Timeout<T> timeout = head.next;
+            unlink(timeout);
+            // Due this very tick: lands in the level-0 slot that is flushed next
+            place(timeout, currentTick);
+        }
+    }
+
+    private void place(Timeout<T> timeout, long earliestTick) {
+        long tick = Math.max(timeout.deadlineTick, earliestTick);
+        int level = 0;
+        while ((tick >>> (WHEEL_BITS * level)) - (currentTick >>> (WHEEL_BITS * level)) >= WHEEL_SIZE) {
+            level++;
+        }
+        Timeout<T> head = buckets[level][(int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK];
+        timeout.level = level;
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+        levelSizes[level]++;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+        levelSizes[timeout.level]--;
+        timeout.level = -1;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+}